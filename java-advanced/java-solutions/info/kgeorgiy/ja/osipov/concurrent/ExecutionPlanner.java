@@ -0,0 +1,97 @@
+package info.kgeorgiy.ja.osipov.concurrent;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cost model choosing number of parts for {@link IterativeParallelism} operations
+ * <p>
+ * Keeps running average of per-element cost for each operation and class of user function.
+ * Part gets at least {@link #MIN_PART_WORK_NANOS} of estimated work, so cheap operations
+ * over small lists run in a single part on the caller thread. Operation without estimate
+ * yet is split on maximal number of parts
+ *
+ * @author Osipov Daniil
+ */
+class ExecutionPlanner {
+
+    /**
+     * Minimal estimated work of a part, comparable to cost of starting and joining a thread
+     */
+    static final long MIN_PART_WORK_NANOS = 100_000;
+
+    /**
+     * Weight of new sample in running average
+     */
+    private static final double ALPHA = 0.25;
+
+    /**
+     * Running average of per-element cost in nanoseconds by operation
+     */
+    private final Map<CostKey, Double> nanosPerElement = new ConcurrentHashMap<>();
+
+    /**
+     * Operation identity for cost estimation
+     *
+     * @param operation name of operation
+     * @param functions classes of user functions of the operation
+     */
+    record CostKey(String operation, List<Class<?>> functions) {
+        /**
+         * Construct key of operation by its user functions
+         *
+         * @param operation name of operation
+         * @param functions user functions of the operation
+         * @return key of the operation
+         */
+        static CostKey of(final String operation, final Object... functions) {
+            return new CostKey(operation, classes(List.of(functions)));
+        }
+
+        /**
+         * Return classes of given functions
+         *
+         * @param functions user functions
+         * @return classes of functions in the same order
+         */
+        static List<Class<?>> classes(final List<?> functions) {
+            return functions.stream().<Class<?>>map(Object::getClass).toList();
+        }
+    }
+
+    /**
+     * Return number of parts to split values on
+     *
+     * @param key      operation
+     * @param maxParts maximal number of parts
+     * @param size     number of values
+     * @return number of parts from {@code 1} to {@code maxParts}
+     */
+    int parts(final CostKey key, final int maxParts, final int size) {
+        if (maxParts <= 1) {
+            return 1;
+        }
+        final Double cost = nanosPerElement.get(key);
+        if (cost == null) {
+            return maxParts;
+        }
+        final double work = cost * size;
+        return (int) Math.max(1, Math.min(maxParts, work / MIN_PART_WORK_NANOS));
+    }
+
+    /**
+     * Record measured work of operation
+     *
+     * @param key       operation
+     * @param size      number of processed values
+     * @param workNanos total time spent in parts
+     */
+    void record(final CostKey key, final int size, final long workNanos) {
+        if (size == 0) {
+            return;
+        }
+        final double sample = (double) workNanos / size;
+        nanosPerElement.merge(key, sample, (average, value) -> average + ALPHA * (value - average));
+    }
+}
@@ -0,0 +1,248 @@
+package info.kgeorgiy.ja.osipov.concurrent;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread-safe blocking queue of tasks, fair between task groups
+ * <p>
+ * Tasks of one group are polled in FIFO order. Groups of the highest priority having tasks
+ * are served round-robin: each group gives {@link TaskGroup#weight} tasks per turn and then
+ * moves to the end of the ring. Groups of lower priority are served only when there are no
+ * tasks of higher priority
+ * <p>
+ * Bounded queue holds at most {@code capacity} tasks, {@link #offer} fails and {@link #put} waits
+ * while the queue is full
+ *
+ * @author Osipov Daniil
+ */
+class FairTaskQueue {
+
+    /**
+     * Rings of groups having tasks by priority, highest priority first
+     */
+    private final NavigableMap<Integer, Queue<TaskGroup>> active;
+
+    /**
+     * Total number of tasks in all groups
+     */
+    private int size;
+
+    /**
+     * Maximal number of tasks
+     */
+    private final int capacity;
+
+    /**
+     * Group of tasks of single caller
+     */
+    static class TaskGroup {
+
+        /**
+         * {@link Queue} of tasks of the group
+         */
+        private final Queue<Runnable> tasks;
+
+        /**
+         * Priority of the group, greater is served first
+         */
+        private final int priority;
+
+        /**
+         * Number of tasks polled from the group per turn
+         */
+        private final int weight;
+
+        /**
+         * Number of tasks polled in current turn
+         */
+        private int served;
+
+        /**
+         * Construct empty {@link TaskGroup}
+         *
+         * @param priority - priority of the group, greater is served first
+         * @param weight   - positive number of tasks polled from the group per turn
+         */
+        TaskGroup(final int priority, final int weight) {
+            if (weight <= 0) {
+                throw new IllegalArgumentException("Expected positive weight, found " + weight);
+            }
+            this.tasks = new ArrayDeque<>();
+            this.priority = priority;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Default constructor initialization empty unbounded queue
+     */
+    FairTaskQueue() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Construct empty queue of given capacity
+     *
+     * @param capacity - maximal number of tasks
+     */
+    FairTaskQueue(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Expected positive capacity, found " + capacity);
+        }
+        this.active = new TreeMap<>(Comparator.reverseOrder());
+        this.capacity = capacity;
+    }
+
+    /**
+     * Thread-safe add task of given group and then notify.
+     * Task is added even if queue is full
+     *
+     * @param group - group of the task
+     * @param task  - task to add
+     */
+    synchronized void add(final TaskGroup group, final Runnable task) {
+        if (group.tasks.isEmpty()) {
+            active.computeIfAbsent(group.priority, priority -> new ArrayDeque<>()).add(group);
+        }
+        group.tasks.add(task);
+        size++;
+        if (isBounded()) {
+            // both workers and blocked producers wait on this monitor
+            notifyAll();
+        } else {
+            notify();
+        }
+    }
+
+    /**
+     * Thread-safe add task of given group if queue is not full
+     *
+     * @param group - group of the task
+     * @param task  - task to add
+     * @return {@code true} if task was added, {@code false} if queue is full
+     */
+    synchronized boolean offer(final TaskGroup group, final Runnable task) {
+        if (size >= capacity) {
+            return false;
+        }
+        add(group, task);
+        return true;
+    }
+
+    /**
+     * Thread-safe add task of given group, waiting for queue is not full
+     *
+     * @param group - group of the task
+     * @param task  - task to add
+     * @throws InterruptedException if thread was interrupted
+     */
+    synchronized void put(final TaskGroup group, final Runnable task) throws InterruptedException {
+        while (size >= capacity) {
+            wait();
+        }
+        add(group, task);
+    }
+
+    /**
+     * Thread-safe remove all tasks of given group not polled yet
+     *
+     * @param group - group to remove
+     */
+    synchronized void remove(final TaskGroup group) {
+        if (group.tasks.isEmpty()) {
+            return;
+        }
+        final Queue<TaskGroup> ring = active.get(group.priority);
+        ring.remove(group);
+        if (ring.isEmpty()) {
+            active.remove(group.priority);
+        }
+        size -= group.tasks.size();
+        group.tasks.clear();
+        group.served = 0;
+        if (isBounded()) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Return whether queue has capacity
+     *
+     * @return {@code true} if number of tasks is limited
+     */
+    private boolean isBounded() {
+        return capacity != Integer.MAX_VALUE;
+    }
+
+    /**
+     * Thread-safe poll next task.
+     * Wait for queue is not empty, then poll task of current group of the highest priority
+     *
+     * @return next task
+     * @throws InterruptedException if thread was interrupted
+     */
+    synchronized Runnable poll() throws InterruptedException {
+        while (size == 0) {
+            wait();
+        }
+        return pollTask();
+    }
+
+    /**
+     * Thread-safe poll next task.
+     * Wait for queue is not empty at most given time, then poll task of current group of the highest priority
+     *
+     * @param timeoutNanos - maximal time to wait in nanoseconds
+     * @return next task or {@code null} if queue stayed empty for given time
+     * @throws InterruptedException if thread was interrupted
+     */
+    synchronized Runnable poll(final long timeoutNanos) throws InterruptedException {
+        final long deadline = System.nanoTime() + timeoutNanos;
+        long remaining = timeoutNanos;
+        while (size == 0) {
+            if (remaining <= 0) {
+                return null;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            remaining = deadline - System.nanoTime();
+        }
+        return pollTask();
+    }
+
+    /**
+     * Poll next task from non-empty queue, rotating the ring of groups if needed
+     *
+     * @return next task
+     */
+    private Runnable pollTask() {
+        final Map.Entry<Integer, Queue<TaskGroup>> level = active.firstEntry();
+        final Queue<TaskGroup> ring = level.getValue();
+        final TaskGroup group = ring.element();
+        final Runnable task = group.tasks.poll();
+        size--;
+        if (group.tasks.isEmpty()) {
+            ring.remove();
+            group.served = 0;
+        } else if (++group.served >= group.weight) {
+            ring.add(ring.remove());
+            group.served = 0;
+        }
+        if (ring.isEmpty()) {
+            active.remove(level.getKey());
+        }
+        if (isBounded() && size == capacity - 1) {
+            notifyAll();
+        }
+        return task;
+    }
+
+    /**
+     * Thread-safe getting number of tasks
+     *
+     * @return number of tasks in the queue
+     */
+    synchronized int size() {
+        return size;
+    }
+}
@@ -0,0 +1,135 @@
+package info.kgeorgiy.ja.osipov.concurrent;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Open-addressing hash map from {@code int} keys to {@code long} counters without boxing.
+ * Not thread-safe
+ *
+ * @author Osipov Daniil
+ */
+class IntLongHashMap {
+
+    /**
+     * Initial capacity, power of two
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Fibonacci hashing multiplier
+     */
+    private static final int PHI = 0x9E3779B9;
+
+    private int[] keys;
+    private long[] values;
+    private boolean[] used;
+
+    /**
+     * Number of keys
+     */
+    private int size;
+
+    /**
+     * Construct empty {@link IntLongHashMap}
+     */
+    IntLongHashMap() {
+        keys = new int[INITIAL_CAPACITY];
+        values = new long[INITIAL_CAPACITY];
+        used = new boolean[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Return slot of given key or free slot for it
+     *
+     * @param key key to find
+     * @return slot index
+     */
+    private int slot(final int key) {
+        final int mask = keys.length - 1;
+        int index = (key * PHI) >>> (Integer.SIZE - Integer.numberOfTrailingZeros(keys.length));
+        while (used[index] && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    /**
+     * Add {@code delta} to counter of given key, absent counter is zero
+     *
+     * @param key   key of counter
+     * @param delta value to add
+     */
+    void add(final int key, final long delta) {
+        final int index = slot(key);
+        if (used[index]) {
+            values[index] += delta;
+            return;
+        }
+        used[index] = true;
+        keys[index] = key;
+        values[index] = delta;
+        if (++size * 2 > keys.length) {
+            grow();
+        }
+    }
+
+    /**
+     * Double capacity, keeping load factor at most 1/2
+     */
+    private void grow() {
+        final int[] oldKeys = keys;
+        final long[] oldValues = values;
+        final boolean[] oldUsed = used;
+        keys = new int[oldKeys.length * 2];
+        values = new long[oldKeys.length * 2];
+        used = new boolean[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldUsed[i]) {
+                final int index = slot(oldKeys[i]);
+                used[index] = true;
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Add all counters of other map to counters of this one
+     *
+     * @param other map to add
+     * @return this map
+     */
+    IntLongHashMap addAll(final IntLongHashMap other) {
+        for (int i = 0; i < other.keys.length; ++i) {
+            if (other.used[i]) {
+                add(other.keys[i], other.values[i]);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Return number of keys
+     *
+     * @return number of keys
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Convert to boxed {@link Map}
+     *
+     * @return new {@link HashMap} with the same counters
+     */
+    Map<Integer, Long> toMap() {
+        final Map<Integer, Long> map = new HashMap<>(size * 2);
+        for (int i = 0; i < keys.length; ++i) {
+            if (used[i]) {
+                map.put(keys[i], values[i]);
+            }
+        }
+        return map;
+    }
+}
@@ -1,12 +1,17 @@
 package info.kgeorgiy.ja.osipov.concurrent;
 
+import info.kgeorgiy.ja.osipov.concurrent.ExecutionPlanner.CostKey;
 import info.kgeorgiy.java.advanced.concurrent.AdvancedIP;
 import info.kgeorgiy.java.advanced.mapper.ParallelMapper;
 
 import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BinaryOperator;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 /**
@@ -23,12 +28,41 @@ public class IterativeParallelism implements AdvancedIP {
      */
     private final ParallelMapper parallelMapper;
 
+    /**
+     * Cost model choosing number of parts or {@code null} to always use maximal number of parts
+     * {@link ExecutionPlanner}
+     */
+    private final ExecutionPlanner planner;
+
+    /**
+     * Way of running parts when there is no {@code parallelMapper}
+     */
+    private final ExecutionMode executionMode;
+
+    /**
+     * Ways of running parts without {@link ParallelMapper}
+     */
+    public enum ExecutionMode {
+        /**
+         * Each part runs in new platform {@link Thread}
+         */
+        PLATFORM_THREADS,
+        /**
+         * Each part runs in new virtual thread scoped to the call.
+         * The first failure of a part interrupts other parts and is rethrown,
+         * interruption of the caller interrupts all parts,
+         * call returns only after all parts are finished
+         * {@link StructuredScope}
+         */
+        STRUCTURED
+    }
+
     /**
      * Default constructor
      * {@code parallelMapper = null}
      */
     public IterativeParallelism() {
-        parallelMapper = null;
+        this((ParallelMapper) null);
     }
 
     /**
@@ -37,7 +71,45 @@ public class IterativeParallelism implements AdvancedIP {
      * @param parallelMapper given instance of {@code parallelMapper}
      */
     public IterativeParallelism(ParallelMapper parallelMapper) {
+        this(parallelMapper, false);
+    }
+
+    /**
+     * Constructor for setting {@code parallelMapper} from given instance and choosing planning
+     * <p>
+     * Adaptive instance estimates per-element cost of each operation and class of its functions
+     * from previous calls and uses less parts than threads, down to running on the caller thread,
+     * when work is too small to pay for thread dispatch.
+     * Non-adaptive instance always splits values on min of number of threads and number of values,
+     * as instances created by other constructors do.
+     *
+     * @param parallelMapper given instance of {@code parallelMapper} or {@code null}
+     * @param adaptive       whether number of parts is chosen by {@link ExecutionPlanner}
+     */
+    public IterativeParallelism(ParallelMapper parallelMapper, boolean adaptive) {
+        this(parallelMapper, adaptive, ExecutionMode.PLATFORM_THREADS);
+    }
+
+    /**
+     * Constructor for instance running parts in given way
+     *
+     * @param executionMode way of running parts
+     */
+    public IterativeParallelism(ExecutionMode executionMode) {
+        this(null, false, executionMode);
+    }
+
+    /**
+     * Constructor for setting all parameters
+     *
+     * @param parallelMapper given instance of {@code parallelMapper} or {@code null}
+     * @param adaptive       whether number of parts is chosen by {@link ExecutionPlanner}
+     * @param executionMode  way of running parts when {@code parallelMapper} is {@code null}
+     */
+    public IterativeParallelism(ParallelMapper parallelMapper, boolean adaptive, ExecutionMode executionMode) {
         this.parallelMapper = parallelMapper;
+        this.planner = adaptive ? new ExecutionPlanner() : null;
+        this.executionMode = executionMode;
     }
 
 
@@ -63,11 +135,148 @@ public class IterativeParallelism implements AdvancedIP {
     }
 
     /**
-     * Split given {@link List} values on min {@code numOfThreads} and {@link List#size()}
-     * Parts produced by {@code parallelMapper} if that non-null or
-     * In each {@link Thread} apply given {@code function} to split parts
+     * Apply given {@code function} to each of given {@code parts} in parallel.
+     * Single part is produced on the caller thread, other parts
+     * produced by {@code parallelMapper} if that non-null or
+     * each part is produced in separate {@link Thread} as specified by {@code executionMode}
+     *
+     * @param parts    parts to apply {@code function} to
+     * @param function {@link Function} applying to each part
+     * @param <P>      part type.
+     * @param <R>      value type of {@code function}
+     * @return {@link List} of {@code function} results in order of parts
+     * @throws InterruptedException if one of executing thread was interrupted
+     */
+    private <P, R> List<R> runParts(final List<P> parts,
+                                    final Function<? super P, ? extends R> function) throws InterruptedException {
+        if (parts.size() == 1) {
+            return Collections.singletonList(function.apply(parts.get(0)));
+        }
+        if (Objects.nonNull(parallelMapper)) {
+            return parallelMapper.map(function, parts);
+        }
+        if (executionMode == ExecutionMode.STRUCTURED) {
+            return StructuredScope.run(parts, function);
+        }
+        final int numOfParts = parts.size();
+        final List<Thread> threads = new ArrayList<>();
+        final List<R> partResults = new ArrayList<>(Collections.nCopies(numOfParts, null));
+        for (int i = 0; i < numOfParts; ++i) {
+            final int index = i;
+            Thread thread = new Thread(() -> partResults.set(index, function.apply(parts.get(index))));
+            thread.start();
+            threads.add(thread);
+        }
+        for (final Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                for (final Thread th : threads) {
+                    th.interrupt();
+                    try {
+                        th.join();
+                    } catch (InterruptedException exception) {
+                        e.addSuppressed(exception);
+                    }
+                }
+                throw e;
+            }
+        }
+        return partResults;
+    }
+
+    /**
+     * Split given {@link List} values on at most min {@code numOfThreads} and {@link List#size()} parts.
+     * Number of parts is chosen by {@code planner} if that non-null
+     *
+     * @param key          operation
+     * @param numOfThreads number of concurrent threads.
+     * @param values       {@link List} values
+     * @param <T>          value type.
+     * @return {@link List} split parts, at least one
+     */
+    private <T> List<List<T>> split(final CostKey key, final int numOfThreads, final List<T> values) {
+        final int maxParts = Math.max(1, Math.min(numOfThreads, values.size()));
+        return splitList(Objects.isNull(planner) ? maxParts : planner.parts(key, maxParts, values.size()), values);
+    }
+
+    /**
+     * Apply given {@code function} to each of given {@code parts} in parallel by {@link #runParts(List, Function)}
+     * and record time spent in parts to {@code planner} if that non-null
+     *
+     * @param key      operation
+     * @param parts    parts to apply {@code function} to
+     * @param size     total number of values in parts
+     * @param function {@link Function} applying to each part
+     * @param <P>      part type.
+     * @param <R>      value type of {@code function}
+     * @return {@link List} of {@code function} results in order of parts
+     * @throws InterruptedException if one of executing thread was interrupted
+     */
+    private <P, R> List<R> runMeasured(final CostKey key,
+                                       final List<P> parts,
+                                       final int size,
+                                       final Function<? super P, ? extends R> function) throws InterruptedException {
+        if (Objects.isNull(planner)) {
+            return runParts(parts, function);
+        }
+        final LongAdder work = new LongAdder();
+        final List<R> results = runTimed(parts, work, function);
+        planner.record(key, size, work.sum());
+        return results;
+    }
+
+    /**
+     * Apply given {@code function} to each of given {@code parts} in parallel by {@link #runParts(List, Function)}
+     * and add time spent in parts to {@code work}
+     *
+     * @param parts    parts to apply {@code function} to
+     * @param work     accumulator of time spent in parts, in nanoseconds
+     * @param function {@link Function} applying to each part
+     * @param <P>      part type.
+     * @param <R>      value type of {@code function}
+     * @return {@link List} of {@code function} results in order of parts
+     * @throws InterruptedException if one of executing thread was interrupted
+     */
+    private <P, R> List<R> runTimed(final List<P> parts,
+                                    final LongAdder work,
+                                    final Function<? super P, ? extends R> function) throws InterruptedException {
+        return runParts(parts, part -> {
+            final long start = System.nanoTime();
+            try {
+                return function.apply(part);
+            } finally {
+                work.add(System.nanoTime() - start);
+            }
+        });
+    }
+
+    /**
+     * Split given {@link List} values by {@link #split(CostKey, int, List)}
+     * and in parallel apply given {@code function} to split parts by {@link #runMeasured}
+     *
+     * @param key          operation
+     * @param numOfThreads number of concurrent threads.
+     * @param values       {@link List} values
+     * @param function     {@link Function} applying to each part
+     * @param <T>          value type.
+     * @param <R>          value type of {@code function}
+     * @return {@link List} of {@code function} results in order of parts
+     * @throws InterruptedException if one of executing thread was interrupted
+     */
+    private <T, R> List<R> runSplit(final CostKey key,
+                                    final int numOfThreads,
+                                    final List<T> values,
+                                    final Function<? super List<T>, ? extends R> function) throws InterruptedException {
+        return runMeasured(key, split(key, numOfThreads, values), values.size(), function);
+    }
+
+    /**
+     * Split given {@link List} values on parts by {@link #split(CostKey, int, List)}
+     * In parallel apply given {@code function} to split parts by {@link #runMeasured}
      * return reduced parts result by given {@code reduceFunction}
      *
+     * @param key            operation
      * @param numOfThreads   number of concurrent threads.
      * @param values         {@link List} values
      * @param function       {@link Function} applying to each part
@@ -78,41 +287,27 @@ public class IterativeParallelism implements AdvancedIP {
      * than applying {@code Function} than {@code reduceFunction}
      * @throws InterruptedException if one of executing thread was interrupted
      */
-    private <T, R> R request(int numOfThreads,
-                             final List<T> values,
-                             final Function<Stream<T>, R> function,
-                             final Function<Stream<R>, R> reduceFunction) throws InterruptedException {
-        final int numOfParts = Math.min(numOfThreads, values.size());
-        final List<List<T>> parts = splitList(numOfParts, values);
-        if (Objects.isNull(parallelMapper)) {
-            final List<Thread> threads = new ArrayList<>();
-            final List<R> partResults = new ArrayList<>(Collections.nCopies(numOfParts, null));
-            for (int i = 0; i < numOfParts; ++i) {
-                final int index = i;
-                Thread thread = new Thread(() -> partResults.set(index, function.apply(parts.get(index).stream())));
-                thread.start();
-                threads.add(thread);
-            }
-            for (final Thread thread : threads) {
-                try {
-                    thread.join();
-                } catch (InterruptedException e) {
-                    for (final Thread th : threads) {
-                        th.interrupt();
-                        try {
-                            th.join();
-                        } catch (InterruptedException exception) {
-                            e.addSuppressed(exception);
-                        }
-                    }
-                    throw e;
-                }
-            }
-            return reduceFunction.apply(partResults.stream());
-        } else {
-            List<R> partsResults = parallelMapper.map(list -> function.apply(list.stream()), parts);
-            return reduceFunction.apply(partsResults.stream());
-        }
+    <T, R> R request(final CostKey key,
+                     final int numOfThreads,
+                     final List<T> values,
+                     final Function<Stream<T>, R> function,
+                     final Function<Stream<R>, R> reduceFunction) throws InterruptedException {
+        final List<R> partResults = runSplit(key, numOfThreads, values, part -> function.apply(part.stream()));
+        return reduceFunction.apply(partResults.stream());
+    }
+
+    /**
+     * Start lazy {@link Pipeline} over given values.
+     * All operators of the pipeline are fused and evaluated in a single parallel pass
+     * by its terminal operation.
+     *
+     * @param numOfThreads number of concurrent threads.
+     * @param values       source values.
+     * @param <T>          value type.
+     * @return {@link Pipeline} without stages over given values.
+     */
+    public <T> Pipeline<T, T> source(final int numOfThreads, final List<? extends T> values) {
+        return new Pipeline<>(this, numOfThreads, Collections.unmodifiableList(values), Function.identity(), List.of());
     }
 
     /**
@@ -125,7 +320,7 @@ public class IterativeParallelism implements AdvancedIP {
      */
     @Override
     public String join(final int numOfThreads, final List<?> values) throws InterruptedException {
-        return request(numOfThreads, values,
+        return request(CostKey.of("join"), numOfThreads, values,
                 stream -> stream.map(Object::toString).collect(Collectors.joining()),
                 stream -> stream.collect(Collectors.joining()));
     }
@@ -143,7 +338,7 @@ public class IterativeParallelism implements AdvancedIP {
     public <T> List<T> filter(final int numOfThreads,
                               final List<? extends T> values,
                               final Predicate<? super T> predicate) throws InterruptedException {
-        return request(numOfThreads, values,
+        return request(CostKey.of("filter", predicate), numOfThreads, values,
                 stream -> stream.filter(predicate).collect(Collectors.toList()),
                 stream -> stream.flatMap(List::stream).collect(Collectors.toList()));
     }
@@ -161,7 +356,7 @@ public class IterativeParallelism implements AdvancedIP {
     public <T, U> List<U> map(final int numOfThreads,
                               final List<? extends T> values,
                               final Function<? super T, ? extends U> function) throws InterruptedException {
-        return request(numOfThreads, values,
+        return request(CostKey.of("map", function), numOfThreads, values,
                 stream -> stream.map(function).collect(Collectors.toList()),
                 stream -> stream.flatMap(List::stream).collect(Collectors.toList()));
     }
@@ -182,7 +377,26 @@ public class IterativeParallelism implements AdvancedIP {
     public <T> T maximum(final int numOfThreads,
                          final List<? extends T> values,
                          final Comparator<? super T> comparator) throws InterruptedException {
-        return request(numOfThreads, values,
+        return maximum(CostKey.of("maximum", comparator), numOfThreads, values, comparator);
+    }
+
+    /**
+     * Returns maximum value, estimating cost as given operation.
+     *
+     * @param key          operation
+     * @param numOfThreads number of concurrent threads.
+     * @param values       values to get maximum of.
+     * @param comparator   value comparator.
+     * @param <T>          value type.
+     * @return maximum of given values
+     * @throws InterruptedException             if executing thread was interrupted.
+     * @throws java.util.NoSuchElementException if no values are given.
+     */
+    private <T> T maximum(final CostKey key,
+                          final int numOfThreads,
+                          final List<? extends T> values,
+                          final Comparator<? super T> comparator) throws InterruptedException {
+        return request(key, numOfThreads, values,
                 stream -> stream.max(comparator).orElseThrow(NoSuchElementException::new),
                 stream -> stream.max(comparator).orElseThrow(NoSuchElementException::new));
     }
@@ -202,7 +416,7 @@ public class IterativeParallelism implements AdvancedIP {
     public <T> T minimum(final int numOfThreads,
                          final List<? extends T> values,
                          final Comparator<? super T> comparator) throws InterruptedException {
-        return maximum(numOfThreads, values, comparator.reversed());
+        return maximum(CostKey.of("minimum", comparator), numOfThreads, values, comparator.reversed());
     }
 
     /**
@@ -219,7 +433,7 @@ public class IterativeParallelism implements AdvancedIP {
     public <T> boolean all(final int numOfThreads,
                            final List<? extends T> values,
                            final Predicate<? super T> predicate) throws InterruptedException {
-        return !any(numOfThreads, values, predicate.negate());
+        return !any(CostKey.of("all", predicate), numOfThreads, values, predicate.negate());
     }
 
     /**
@@ -236,7 +450,25 @@ public class IterativeParallelism implements AdvancedIP {
     public <T> boolean any(final int numOfThreads,
                            final List<? extends T> values,
                            final Predicate<? super T> predicate) throws InterruptedException {
-        return request(numOfThreads, values,
+        return any(CostKey.of("any", predicate), numOfThreads, values, predicate);
+    }
+
+    /**
+     * Returns whether any of values satisfies predicate, estimating cost as given operation.
+     *
+     * @param key          operation
+     * @param numOfThreads number of concurrent threads.
+     * @param values       values to test.
+     * @param predicate    test predicate.
+     * @param <T>          value type.
+     * @return whether any value satisfies predicate or {@code false}, if no values are given.
+     * @throws InterruptedException if executing thread was interrupted.
+     */
+    private <T> boolean any(final CostKey key,
+                            final int numOfThreads,
+                            final List<? extends T> values,
+                            final Predicate<? super T> predicate) throws InterruptedException {
+        return request(key, numOfThreads, values,
                 stream -> stream.anyMatch(predicate),
                 stream -> stream.anyMatch(Boolean::booleanValue));
     }
@@ -255,7 +487,7 @@ public class IterativeParallelism implements AdvancedIP {
     public <T> int count(final int numOfThreads,
                          final List<? extends T> values,
                          final Predicate<? super T> predicate) throws InterruptedException {
-        return request(numOfThreads, values,
+        return request(CostKey.of("count", predicate), numOfThreads, values,
                 stream -> (int) stream.filter(predicate).count(),
                 stream -> stream.mapToInt(Integer::intValue).sum());
     }
@@ -288,7 +520,7 @@ public class IterativeParallelism implements AdvancedIP {
                         final List<T> values,
                         final Monoid<T> monoid) throws InterruptedException {
         final Function<Stream<T>, T> reduceFunc = genReduceFunc(Function.identity(), monoid);
-        return request(numOfThreads, values, reduceFunc, reduceFunc);
+        return request(CostKey.of("reduce", monoid.getOperator()), numOfThreads, values, reduceFunc, reduceFunc);
     }
 
     /**
@@ -306,6 +538,249 @@ public class IterativeParallelism implements AdvancedIP {
                               final List<T> values,
                               final Function<T, R> lift,
                               final Monoid<R> monoid) throws InterruptedException {
-        return request(numOfThreads, values, genReduceFunc(lift, monoid), genReduceFunc(Function.identity(), monoid));
+        return request(CostKey.of("mapReduce", lift, monoid.getOperator()), numOfThreads, values,
+                genReduceFunc(lift, monoid), genReduceFunc(Function.identity(), monoid));
+    }
+
+    /**
+     * Sorts values by parallel merge sort.
+     * Each part is sorted in parallel, then sorted parts are merged pairwise in parallel rounds.
+     *
+     * @param numOfThreads number of concurrent threads.
+     * @param values       values to sort.
+     * @param comparator   value comparator.
+     * @param <T>          value type.
+     * @return new list of sorted values. Sort is stable.
+     * @throws InterruptedException if executing thread was interrupted.
+     */
+    public <T> List<T> sort(final int numOfThreads,
+                            final List<? extends T> values,
+                            final Comparator<? super T> comparator) throws InterruptedException {
+        final List<List<T>> sorted = runSplit(CostKey.of("sort", comparator), numOfThreads, values, part -> {
+            final List<T> copy = new ArrayList<>(part);
+            copy.sort(comparator);
+            return copy;
+        });
+        return mergeTree(sorted, (left, right) -> merge(left, right, comparator));
+    }
+
+    /**
+     * Merge part results pairwise in parallel rounds until one result left
+     *
+     * @param partResults non-empty {@link List} of part results
+     * @param merge       merge of two adjacent results, left goes first
+     * @param <R>         result type.
+     * @return merged result
+     * @throws InterruptedException if executing thread was interrupted.
+     */
+    private <R> R mergeTree(final List<R> partResults, final BinaryOperator<R> merge) throws InterruptedException {
+        List<R> results = partResults;
+        while (results.size() > 1) {
+            final List<R> round = results;
+            final List<Integer> pairs = IntStream.range(0, (round.size() + 1) / 2).boxed().toList();
+            results = runParts(pairs, i -> 2 * i + 1 < round.size()
+                    ? merge.apply(round.get(2 * i), round.get(2 * i + 1))
+                    : round.get(2 * i));
+        }
+        return results.get(0);
+    }
+
+    /**
+     * Stable merge of two sorted lists
+     *
+     * @param left       first sorted list, its values go first among equal ones
+     * @param right      second sorted list
+     * @param comparator value comparator
+     * @param <T>        value type.
+     * @return merged sorted list
+     */
+    private static <T> List<T> merge(final List<T> left, final List<T> right, final Comparator<? super T> comparator) {
+        final List<T> merged = new ArrayList<>(left.size() + right.size());
+        int i = 0;
+        int j = 0;
+        while (i < left.size() && j < right.size()) {
+            merged.add(comparator.compare(left.get(i), right.get(j)) <= 0 ? left.get(i++) : right.get(j++));
+        }
+        merged.addAll(left.subList(i, left.size()));
+        merged.addAll(right.subList(j, right.size()));
+        return merged;
+    }
+
+    /**
+     * Computes inclusive prefix reductions of values by two-pass parallel scan.
+     * First pass reduces each part, second pass scans each part starting from reduction of previous parts.
+     *
+     * @param numOfThreads number of concurrent threads.
+     * @param values       values to scan.
+     * @param monoid       monoid to use.
+     * @param <T>          value type.
+     * @return list which {@code i}-th value is reduction of first {@code i + 1} values.
+     * @throws InterruptedException if executing thread was interrupted.
+     */
+    public <T> List<T> scan(final int numOfThreads,
+                            final List<T> values,
+                            final Monoid<T> monoid) throws InterruptedException {
+        final CostKey key = CostKey.of("scan", monoid.getOperator());
+        final List<List<T>> parts = split(key, numOfThreads, values);
+        // both passes go through all values, so they are recorded as a single sample
+        final LongAdder work = new LongAdder();
+        final List<T> totals = runTimed(parts, work, part -> part.stream().reduce(monoid.getIdentity(), monoid.getOperator()));
+        final List<T> offsets = new ArrayList<>(parts.size());
+        T offset = monoid.getIdentity();
+        for (final T total : totals) {
+            offsets.add(offset);
+            offset = monoid.getOperator().apply(offset, total);
+        }
+        final List<Integer> indices = IntStream.range(0, parts.size()).boxed().toList();
+        final List<List<T>> scanned = runTimed(indices, work, i -> {
+            final List<T> result = new ArrayList<>(parts.get(i).size());
+            T accumulator = offsets.get(i);
+            for (final T value : parts.get(i)) {
+                accumulator = monoid.getOperator().apply(accumulator, value);
+                result.add(accumulator);
+            }
+            return result;
+        });
+        if (Objects.nonNull(planner)) {
+            planner.record(key, values.size(), work.sum());
+        }
+        return scanned.stream().flatMap(List::stream).collect(Collectors.toList());
+    }
+
+    /**
+     * Returns {@code k} maximal values.
+     * Each part selects its {@code k} maximal values by bounded heap, then selections are merged.
+     *
+     * @param numOfThreads number of concurrent threads.
+     * @param values       values to select from.
+     * @param k            number of values to select.
+     * @param comparator   value comparator.
+     * @param <T>          value type.
+     * @return list of min {@code k} and {@link List#size()} maximal values in descending order.
+     * @throws InterruptedException if executing thread was interrupted.
+     */
+    public <T> List<T> topK(final int numOfThreads,
+                            final List<? extends T> values,
+                            final int k,
+                            final Comparator<? super T> comparator) throws InterruptedException {
+        if (k <= 0) {
+            return new ArrayList<>();
+        }
+        final List<PriorityQueue<T>> heaps = runSplit(CostKey.of("topK", comparator), numOfThreads, values, part -> {
+            // heap never holds more than min of k and part size values
+            final PriorityQueue<T> heap = new PriorityQueue<>(Math.min(k, part.size()) + 1, comparator);
+            part.forEach(value -> offerBounded(heap, value, k, comparator));
+            return heap;
+        });
+        final int selected = heaps.stream().mapToInt(PriorityQueue::size).sum();
+        final PriorityQueue<T> top = new PriorityQueue<>(Math.min(k, selected) + 1, comparator);
+        heaps.forEach(heap -> heap.forEach(value -> offerBounded(top, value, k, comparator)));
+        final List<T> result = new ArrayList<>(top);
+        result.sort(Collections.reverseOrder(comparator));
+        return result;
+    }
+
+    /**
+     * Add value to min-heap keeping at most {@code k} maximal values
+     *
+     * @param heap       min-heap by {@code comparator}
+     * @param value      value to add
+     * @param k          maximal size of the heap
+     * @param comparator value comparator
+     * @param <T>        value type.
+     */
+    private static <T> void offerBounded(final PriorityQueue<T> heap,
+                                         final T value,
+                                         final int k,
+                                         final Comparator<? super T> comparator) {
+        if (heap.size() < k) {
+            heap.add(value);
+        } else if (comparator.compare(value, heap.peek()) > 0) {
+            heap.poll();
+            heap.add(value);
+        }
+    }
+
+    /**
+     * Counts values by keys.
+     * Each part counts its values in local hash map, then partial maps are merged in parallel tree.
+     *
+     * @param numOfThreads number of concurrent threads.
+     * @param values       values to count.
+     * @param key          key function.
+     * @param <T>          value type.
+     * @param <K>          key type.
+     * @return map from key to number of values having this key.
+     * @throws InterruptedException if executing thread was interrupted.
+     */
+    public <T, K> Map<K, Long> groupingCount(final int numOfThreads,
+                                             final List<? extends T> values,
+                                             final Function<? super T, ? extends K> key) throws InterruptedException {
+        return groupingReduce(numOfThreads, values, key, value -> 1L, new Monoid<>(0L, Long::sum));
+    }
+
+    /**
+     * Maps and reduces values by keys using monoid.
+     * Each part reduces its values in local hash map, then partial maps are merged in parallel tree.
+     *
+     * @param numOfThreads number of concurrent threads.
+     * @param values       values to reduce.
+     * @param key          key function.
+     * @param lift         mapping function.
+     * @param monoid       monoid to use.
+     * @param <T>          value type.
+     * @param <K>          key type.
+     * @param <R>          reduced value type.
+     * @return map from key to mapped values having this key reduced in order of values.
+     * @throws InterruptedException if executing thread was interrupted.
+     */
+    public <T, K, R> Map<K, R> groupingReduce(final int numOfThreads,
+                                              final List<? extends T> values,
+                                              final Function<? super T, ? extends K> key,
+                                              final Function<? super T, ? extends R> lift,
+                                              final Monoid<R> monoid) throws InterruptedException {
+        final BinaryOperator<R> operator = monoid.getOperator();
+        final CostKey costKey = CostKey.of("groupingReduce", key, lift, operator);
+        final List<Map<K, R>> partMaps = runSplit(costKey, numOfThreads, values, part -> {
+            final Map<K, R> map = new HashMap<>();
+            for (final T value : part) {
+                map.merge(key.apply(value), operator.apply(monoid.getIdentity(), lift.apply(value)), operator);
+            }
+            return map;
+        });
+        return mergeTree(partMaps, (left, right) -> {
+            if (left.size() >= right.size()) {
+                right.forEach((k, v) -> left.merge(k, v, operator));
+                return left;
+            }
+            left.forEach((k, v) -> right.merge(k, v, (rightValue, leftValue) -> operator.apply(leftValue, rightValue)));
+            return right;
+        });
+    }
+
+    /**
+     * Counts values by {@code int} keys.
+     * Fast path of {@link #groupingCount(int, List, Function)}: parts count values
+     * in primitive hash maps, keys are boxed only once for the result.
+     *
+     * @param numOfThreads number of concurrent threads.
+     * @param values       values to count.
+     * @param key          key function.
+     * @param <T>          value type.
+     * @return map from key to number of values having this key.
+     * @throws InterruptedException if executing thread was interrupted.
+     */
+    public <T> Map<Integer, Long> groupingCountInt(final int numOfThreads,
+                                                   final List<? extends T> values,
+                                                   final ToIntFunction<? super T> key) throws InterruptedException {
+        final List<IntLongHashMap> partMaps = runSplit(CostKey.of("groupingCountInt", key), numOfThreads, values, part -> {
+            final IntLongHashMap map = new IntLongHashMap();
+            for (final T value : part) {
+                map.add(key.applyAsInt(value), 1);
+            }
+            return map;
+        });
+        return mergeTree(partMaps, (left, right) -> left.size() >= right.size() ? left.addAll(right) : right.addAll(left))
+                .toMap();
     }
 }
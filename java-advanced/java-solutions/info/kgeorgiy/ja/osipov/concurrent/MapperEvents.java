@@ -0,0 +1,64 @@
+package info.kgeorgiy.ja.osipov.concurrent;
+
+import jdk.jfr.*;
+
+/**
+ * JFR events of {@link ParallelMapperImpl}
+ * <p>
+ * Events are committed only while recording is on, otherwise they cost next to nothing
+ *
+ * @author Osipov Daniil
+ */
+final class MapperEvents {
+
+    /**
+     * Utility class
+     */
+    private MapperEvents() {
+    }
+
+    /**
+     * Single task run by worker thread
+     */
+    @Name("info.kgeorgiy.ja.osipov.concurrent.MapperTask")
+    @Label("Mapper Task")
+    @Category("ParallelMapper")
+    @StackTrace(false)
+    static class Task extends Event {
+    }
+
+    /**
+     * Single {@link ParallelMapperImpl#map} call, from submitting to getting results
+     */
+    @Name("info.kgeorgiy.ja.osipov.concurrent.MapperCall")
+    @Label("Mapper Call")
+    @Category("ParallelMapper")
+    static class Call extends Event {
+        @Label("List Size")
+        int size;
+
+        @Label("Queue Depth")
+        @Description("Number of tasks in the queue after submitting")
+        int queueDepth;
+
+        @Label("Wait Duration")
+        @Timespan
+        long waitNanos;
+    }
+
+    /**
+     * Start or stop of worker thread of elastic {@link ParallelMapperImpl}
+     */
+    @Name("info.kgeorgiy.ja.osipov.concurrent.MapperPoolResize")
+    @Label("Mapper Pool Resize")
+    @Category("ParallelMapper")
+    @StackTrace(false)
+    static class PoolResize extends Event {
+        @Label("Pool Size")
+        int size;
+
+        @Label("Grew")
+        @Description("Whether thread was started because of backlog, otherwise stopped after idle timeout")
+        boolean grew;
+    }
+}
@@ -0,0 +1,274 @@
+package info.kgeorgiy.ja.osipov.concurrent;
+
+import info.kgeorgiy.java.advanced.mapper.ParallelMapper;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * {@link ParallelMapper} caching results of another mapper
+ * <p>
+ * Results are cached by function identity and input value in bounded cache. Cache is split
+ * by key hash into segments with their own locks and capacities, so lookups of different segments
+ * do not contend, and least recently used result of a segment is evicted first. Functions must be pure.
+ * Concurrent calls mapping the same value by the same function compute it once:
+ * the first call maps it, others wait for its result. Failure of function is shared with waiting calls,
+ * while value abandoned by interrupted call is computed by waiting calls themselves
+ *
+ * @author Osipov Daniil
+ */
+public class MemoizingParallelMapper implements ParallelMapper {
+
+    /**
+     * Cached {@code null} result
+     */
+    private static final Object NULL = new Object();
+
+    /**
+     * Result of in-flight computation abandoned by interrupted call
+     */
+    private static final Object ABANDONED = new Object();
+
+    /**
+     * Maximal number of cache segments
+     */
+    private static final int SEGMENTS = 16;
+
+    /**
+     * Mapper computing missing results
+     */
+    private final ParallelMapper delegate;
+
+    /**
+     * Cached results by key hash, each segment is in access order and guarded by itself
+     */
+    private final List<Map<Key, Object>> segments;
+
+    /**
+     * Results being computed by some call
+     */
+    private final Map<Key, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Number of values found in cache or computed by concurrent call
+     */
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * Number of values computed by delegate
+     */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Cache key
+     *
+     * @param function mapping function, compared by identity
+     * @param input    mapped value
+     */
+    private record Key(Function<?, ?> function, Object input) {
+    }
+
+    /**
+     * Construct {@link MemoizingParallelMapper} over given mapper
+     *
+     * @param delegate - mapper computing missing results, closed by {@link #close()}
+     * @param capacity - maximal number of cached results
+     */
+    public MemoizingParallelMapper(final ParallelMapper delegate, final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        this.delegate = delegate;
+        final int count = Math.min(SEGMENTS, capacity);
+        final List<Map<Key, Object>> segments = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            final int segmentCapacity = capacity / count + (i < capacity % count ? 1 : 0);
+            segments.add(new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<Key, Object> eldest) {
+                    return size() > segmentCapacity;
+                }
+            });
+        }
+        this.segments = List.copyOf(segments);
+    }
+
+    /**
+     * Return cache segment of key
+     *
+     * @param key - cache key
+     * @return segment
+     */
+    private Map<Key, Object> segment(final Key key) {
+        final int hash = key.hashCode();
+        return segments.get(Math.floorMod(hash ^ (hash >>> 16), segments.size()));
+    }
+
+    /**
+     * Maps function {@code function} over specified {@code list}.
+     * Cached results are taken from cache, the rest are mapped by delegate in parallel.
+     *
+     * @throws InterruptedException if calling thread was interrupted
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T, R> List<R> map(final Function<? super T, ? extends R> function,
+                              final List<? extends T> list) throws InterruptedException {
+        final Object[] results = new Object[list.size()];
+        final Map<Integer, CompletableFuture<Object>> awaited = new HashMap<>();
+        final Map<Key, CompletableFuture<Object>> owned = new LinkedHashMap<>();
+        for (int i = 0; i < results.length; ++i) {
+            final Key key = new Key(function, list.get(i));
+            final Map<Key, Object> segment = segment(key);
+            final Object cached;
+            synchronized (segment) {
+                cached = segment.get(key);
+            }
+            if (cached != null) {
+                results[i] = cached;
+                hits.increment();
+                continue;
+            }
+            final CompletableFuture<Object> future = new CompletableFuture<>();
+            final CompletableFuture<Object> computing = inFlight.putIfAbsent(key, future);
+            if (computing == null) {
+                owned.put(key, future);
+                misses.increment();
+                awaited.put(i, future);
+            } else {
+                hits.increment();
+                awaited.put(i, computing);
+            }
+        }
+        if (!owned.isEmpty()) {
+            compute(function, owned);
+        }
+        final List<Integer> abandoned = new ArrayList<>();
+        for (final Map.Entry<Integer, CompletableFuture<Object>> entry : awaited.entrySet()) {
+            try {
+                final Object value = entry.getValue().get();
+                if (value == ABANDONED) {
+                    abandoned.add(entry.getKey());
+                } else {
+                    results[entry.getKey()] = value;
+                }
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                if (e.getCause() instanceof Error error) {
+                    throw error;
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        if (!abandoned.isEmpty()) {
+            // counted as computed by concurrent call, but that call was interrupted
+            hits.add(-abandoned.size());
+            final List<T> inputs = new ArrayList<>(abandoned.size());
+            for (final int index : abandoned) {
+                inputs.add(list.get(index));
+            }
+            final List<R> retried = map(function, inputs);
+            for (int i = 0; i < abandoned.size(); ++i) {
+                results[abandoned.get(i)] = retried.get(i);
+            }
+        }
+        for (int i = 0; i < results.length; ++i) {
+            if (results[i] == NULL) {
+                results[i] = null;
+            }
+        }
+        return (List<R>) Arrays.asList(results);
+    }
+
+    /**
+     * Map owned values by delegate, cache results and complete their futures.
+     * If this call is interrupted, futures are completed with {@link #ABANDONED}
+     *
+     * @param function - mapping function
+     * @param owned    - futures of values computed by this call
+     * @param <T>      - type of values
+     * @param <R>      - type of results
+     * @throws InterruptedException if calling thread was interrupted
+     */
+    @SuppressWarnings("unchecked")
+    private <T, R> void compute(final Function<? super T, ? extends R> function,
+                                final Map<Key, CompletableFuture<Object>> owned) throws InterruptedException {
+        final List<T> inputs = new ArrayList<>(owned.size());
+        for (final Key key : owned.keySet()) {
+            inputs.add((T) key.input());
+        }
+        final List<R> computed;
+        try {
+            computed = delegate.map(function, inputs);
+        } catch (InterruptedException e) {
+            owned.forEach((key, future) -> {
+                inFlight.remove(key);
+                future.complete(ABANDONED);
+            });
+            throw e;
+        } catch (RuntimeException | Error e) {
+            owned.forEach((key, future) -> {
+                inFlight.remove(key);
+                future.completeExceptionally(e);
+            });
+            throw e;
+        }
+        int i = 0;
+        for (final Map.Entry<Key, CompletableFuture<Object>> entry : owned.entrySet()) {
+            final Object value = Objects.requireNonNullElse(computed.get(i++), NULL);
+            final Map<Key, Object> segment = segment(entry.getKey());
+            synchronized (segment) {
+                segment.put(entry.getKey(), value);
+            }
+            inFlight.remove(entry.getKey());
+            entry.getValue().complete(value);
+        }
+    }
+
+    /**
+     * Return number of values found in cache or computed by concurrent call
+     *
+     * @return number of hits
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Return number of values mapped by delegate
+     *
+     * @return number of misses
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Return number of cached results
+     *
+     * @return cache size
+     */
+    public int size() {
+        int size = 0;
+        for (final Map<Key, Object> segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Closes delegate mapper.
+     */
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
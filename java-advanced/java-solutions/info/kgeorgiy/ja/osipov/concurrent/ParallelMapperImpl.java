@@ -2,7 +2,14 @@ package info.kgeorgiy.ja.osipov.concurrent;
 
 import info.kgeorgiy.java.advanced.mapper.ParallelMapper;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
 /**
@@ -13,64 +20,105 @@ import java.util.function.Function;
 public class ParallelMapperImpl implements ParallelMapper {
 
     /**
-     * {@link List} {@link Thread} to produce tasks.
+     * Alive {@link Thread} to produce tasks.
      */
-    private final List<Thread> threads;
+    private final Set<Thread> threads;
 
     /**
-     * Thread-safe queue {@link BlockingQueue} for task to run
+     * Number of threads kept alive even when there are no tasks
      */
-    private final BlockingQueue<Runnable> tasks;
+    private final int minThreads;
 
     /**
-     * Thread-safe queue
-     *
-     * @param <T> type of queuing elements
+     * Maximal number of threads
+     */
+    private final int maxThreads;
+
+    /**
+     * Time in nanoseconds thread above {@code minThreads} waits for a task before stopping
+     */
+    private final long keepAliveNanos;
+
+    /**
+     * Number of started and not stopped threads
+     */
+    private final AtomicInteger liveThreads;
+
+    /**
+     * Number of threads waiting for a task or started and not waiting yet
+     */
+    private final AtomicInteger idleThreads;
+
+    /**
+     * Whether {@link #close()} was called, guarded by {@code threads}
+     */
+    private boolean closed;
+
+    /**
+     * Thread-safe queue {@link FairTaskQueue} for task to run
+     */
+    private final FairTaskQueue tasks;
+
+    /**
+     * Way of collecting results of {@link #map(Function, List)}
+     */
+    private final ResultMode resultMode;
+
+    /**
+     * Action taken when bounded {@code tasks} queue is full
      */
-    private static class BlockingQueue<T> {
+    private final SaturationPolicy saturationPolicy;
 
+    /**
+     * Operational metrics, disabled until {@link ParallelMapperMetrics#setEnabled(boolean)}
+     */
+    private final ParallelMapperMetrics metrics;
+
+    /**
+     * Name of registered {@link ParallelMapperMetricsMBean} or {@code null}
+     */
+    private ObjectName mBeanName;
+
+    /**
+     * Ways of collecting mapping results
+     */
+    public enum ResultMode {
         /**
-         * {@link Queue} of elements
+         * Each element is a separate task, results are set one by one under the lock
+         * {@link ListOfMappingResults}
          */
-        private final Queue<T> queue;
-
+        PER_ELEMENT,
         /**
-         * Default constructor initialization queue as {@link ArrayDeque}
+         * Each thread maps contiguous block of elements into preallocated array,
+         * caller is woken up once when the last block is done
+         * {@link ChunkedMappingResults}
          */
-        public BlockingQueue() {
-            queue = new ArrayDeque<>();
-        }
+        CHUNKED
+    }
 
+    /**
+     * Actions taken by {@link #map(Function, List)} when bounded task queue is full
+     */
+    public enum SaturationPolicy {
         /**
-         * Thread-safe add element and then notify
-         *
-         * @param element - element to add
+         * Wait until workers take some tasks, so tasks are fed as workers drain them
          */
-        public synchronized void add(final T element) {
-            queue.add(element);
-            notify();
-        }
-
+        BLOCK,
         /**
-         * Thread-safe poll first element.
-         * Wait for queue is not empty, then poll element
-         *
-         * @return first element of the queue
-         * @throws InterruptedException if thread was interrupted
+         * Run task on the calling thread
          */
-        public synchronized T poll() throws InterruptedException {
-            while (queue.isEmpty()) {
-                wait();
-            }
-            return queue.poll();
-        }
+        CALLER_RUNS,
+        /**
+         * Remove already queued tasks of the call and throw {@link RejectedExecutionException}
+         */
+        REJECT
     }
 
     /**
      * Construct {@link ParallelMapperImpl} with given number of threads
      * <p>
-     * Initialize {@code threads} as {@link ArrayList}
-     * and {@code tasks} as {@link BlockingQueue}
+     * Initialize {@code threads} as concurrent {@link Set}
+     * and {@code tasks} as {@link FairTaskQueue}
      * add in {@code threads} {@code numberOfThreads} threads
      * which waiting for tasks and running them while not interrupted
      * when start them
@@ -78,23 +126,212 @@ public class ParallelMapperImpl implements ParallelMapper {
      * @param numberOfThreads - number of threads for doing tasks
      */
     public ParallelMapperImpl(final int numberOfThreads) {
-        this.threads = new ArrayList<>();
-        this.tasks = new BlockingQueue<>();
-        Runnable threadSettings = () -> {
-            try {
-                while (!Thread.interrupted()) {
-                    final Runnable task = tasks.poll();
+        this(numberOfThreads, ResultMode.PER_ELEMENT);
+    }
+
+    /**
+     * Construct {@link ParallelMapperImpl} with given number of threads
+     * and given way of collecting mapping results
+     *
+     * @param numberOfThreads - number of threads for doing tasks
+     * @param resultMode      - way of collecting mapping results
+     */
+    public ParallelMapperImpl(final int numberOfThreads, final ResultMode resultMode) {
+        this(numberOfThreads, numberOfThreads, 0, TimeUnit.NANOSECONDS, resultMode);
+    }
+
+    /**
+     * Construct elastic {@link ParallelMapperImpl}
+     * <p>
+     * Pool starts with {@code minThreads} threads and grows up to {@code maxThreads}
+     * while there are more queued tasks than threads able to take them.
+     * Thread above {@code minThreads} stops after waiting for a task during {@code keepAlive}
+     *
+     * @param minThreads - number of threads kept alive even when there are no tasks
+     * @param maxThreads - maximal number of threads for doing tasks
+     * @param keepAlive  - time thread above {@code minThreads} waits for a task before stopping
+     * @param unit       - time unit of {@code keepAlive}
+     */
+    public ParallelMapperImpl(final int minThreads, final int maxThreads, final long keepAlive, final TimeUnit unit) {
+        this(minThreads, maxThreads, keepAlive, unit, ResultMode.PER_ELEMENT);
+    }
+
+    /**
+     * Construct elastic {@link ParallelMapperImpl} with given way of collecting mapping results
+     *
+     * @param minThreads - number of threads kept alive even when there are no tasks
+     * @param maxThreads - maximal number of threads for doing tasks
+     * @param keepAlive  - time thread above {@code minThreads} waits for a task before stopping
+     * @param unit       - time unit of {@code keepAlive}
+     * @param resultMode - way of collecting mapping results
+     * @see #ParallelMapperImpl(int, int, long, TimeUnit)
+     */
+    public ParallelMapperImpl(final int minThreads,
+                              final int maxThreads,
+                              final long keepAlive,
+                              final TimeUnit unit,
+                              final ResultMode resultMode) {
+        this(minThreads, maxThreads, keepAlive, unit, resultMode, Integer.MAX_VALUE, SaturationPolicy.BLOCK);
+    }
+
+    /**
+     * Construct {@link ParallelMapperImpl} with given number of threads and bounded task queue
+     *
+     * @param numberOfThreads  - number of threads for doing tasks
+     * @param queueCapacity    - maximal number of queued tasks
+     * @param saturationPolicy - action taken when task queue is full
+     */
+    public ParallelMapperImpl(final int numberOfThreads,
+                              final int queueCapacity,
+                              final SaturationPolicy saturationPolicy) {
+        this(numberOfThreads, numberOfThreads, 0, TimeUnit.NANOSECONDS, ResultMode.PER_ELEMENT,
+                queueCapacity, saturationPolicy);
+    }
+
+    /**
+     * Construct elastic {@link ParallelMapperImpl} with given way of collecting mapping results
+     * and bounded task queue
+     * <p>
+     * With bounded queue {@link #map(Function, List)} creates tasks one by one as there is room for them,
+     * so memory used by queued tasks does not depend on list size
+     *
+     * @param minThreads       - number of threads kept alive even when there are no tasks
+     * @param maxThreads       - maximal number of threads for doing tasks
+     * @param keepAlive        - time thread above {@code minThreads} waits for a task before stopping
+     * @param unit             - time unit of {@code keepAlive}
+     * @param resultMode       - way of collecting mapping results
+     * @param queueCapacity    - maximal number of queued tasks
+     * @param saturationPolicy - action taken when task queue is full
+     */
+    public ParallelMapperImpl(final int minThreads,
+                              final int maxThreads,
+                              final long keepAlive,
+                              final TimeUnit unit,
+                              final ResultMode resultMode,
+                              final int queueCapacity,
+                              final SaturationPolicy saturationPolicy) {
+        if (minThreads < 0 || maxThreads < Math.max(1, minThreads)) {
+            throw new IllegalArgumentException("Invalid pool bounds: " + minThreads + ".." + maxThreads);
+        }
+        this.threads = ConcurrentHashMap.newKeySet();
+        this.tasks = new FairTaskQueue(queueCapacity);
+        this.resultMode = resultMode;
+        this.saturationPolicy = saturationPolicy;
+        this.minThreads = minThreads;
+        this.maxThreads = maxThreads;
+        this.keepAliveNanos = unit.toNanos(keepAlive);
+        this.liveThreads = new AtomicInteger(minThreads);
+        this.idleThreads = new AtomicInteger();
+        this.metrics = new ParallelMapperMetrics(tasks::size, liveThreads::get);
+        for (int i = 0; i < minThreads; ++i) {
+            startThread();
+        }
+    }
+
+    /**
+     * Start new thread, already counted in {@code liveThreads}, unless mapper is closing.
+     * Thread is counted as idle until it starts waiting for a task
+     *
+     * @return {@code false} if mapper is closing and thread was not started
+     */
+    private boolean startThread() {
+        synchronized (threads) {
+            if (closed) {
+                liveThreads.decrementAndGet();
+                return false;
+            }
+            idleThreads.incrementAndGet();
+            final Thread thread = new Thread(this::runThread);
+            threads.add(thread);
+            thread.start();
+            return true;
+        }
+    }
+
+    /**
+     * Body of the thread: waiting for tasks and running them while not interrupted.
+     * Thread above {@code minThreads} stops after waiting for a task during {@code keepAliveNanos}
+     */
+    private void runThread() {
+        final ParallelMapperMetrics.Worker worker = metrics.registerWorker();
+        // counted as idle by startThread
+        idleThreads.decrementAndGet();
+        boolean retired = false;
+        try {
+            while (!Thread.interrupted()) {
+                final long pollStart = metrics.now();
+                idleThreads.incrementAndGet();
+                final Runnable task;
+                try {
+                    task = maxThreads == minThreads ? tasks.poll() : tasks.poll(keepAliveNanos);
+                } finally {
+                    idleThreads.decrementAndGet();
+                }
+                if (task == null) {
+                    if (tryRetire()) {
+                        retired = true;
+                        return;
+                    }
+                    continue;
+                }
+                final long taskStart = metrics.now();
+                final MapperEvents.Task event = new MapperEvents.Task();
+                event.begin();
+                try {
                     task.run();
+                } catch (RuntimeException e) {
+                    // tasks record failures of mapping function for their callers,
+                    // failure of the task itself must not stop the worker
+                    final Thread current = Thread.currentThread();
+                    current.getUncaughtExceptionHandler().uncaughtException(current, e);
                 }
-            } catch (InterruptedException ignored) {
+                event.commit();
+                metrics.taskCompleted(worker, pollStart, taskStart);
+            }
+        } catch (InterruptedException ignored) {
 
-            } finally {
-                Thread.currentThread().interrupt();
+        } finally {
+            if (!retired) {
+                // retired thread is already not counted
+                liveThreads.decrementAndGet();
+            }
+            metrics.unregisterWorker(worker);
+            threads.remove(Thread.currentThread());
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stop counting current idle thread as alive, if there are more than {@code minThreads} threads
+     *
+     * @return {@code true} if current thread should stop
+     */
+    private boolean tryRetire() {
+        int live;
+        while ((live = liveThreads.get()) > minThreads) {
+            if (liveThreads.compareAndSet(live, live - 1)) {
+                metrics.poolResized(live - 1, false);
+                // task could be added while this thread was already not idle but still counted as alive
+                growIfBacklogged();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Start new threads while there are more queued tasks than threads able to take them
+     * and there are less than {@code maxThreads} threads
+     */
+    private void growIfBacklogged() {
+        int live;
+        while ((live = liveThreads.get()) < maxThreads && tasks.size() > idleThreads.get()) {
+            if (liveThreads.compareAndSet(live, live + 1)) {
+                if (!startThread()) {
+                    return;
+                }
+                metrics.poolResized(live + 1, true);
             }
-        };
-        for (int i = 0; i < numberOfThreads; ++i) {
-            threads.add(new Thread(threadSettings));
-            threads.get(i).start();
         }
     }
 
@@ -115,6 +352,11 @@ public class ParallelMapperImpl implements ParallelMapper {
          */
         private int contains;
 
+        /**
+         * The first failure of mapping function or {@code null}
+         */
+        private Throwable failure;
+
         /**
          * Construct {@link ListOfMappingResults} with given size
          * by initialize {@code list} this {@code size} null elements
@@ -140,22 +382,148 @@ public class ParallelMapperImpl implements ParallelMapper {
             }
         }
 
+        /**
+         * Thread-safe record failure of mapping function. After recording notify
+         *
+         * @param throwable - thrown by mapping function
+         */
+        private synchronized void fail(final Throwable throwable) {
+            if (failure == null) {
+                failure = throwable;
+            }
+            notify();
+        }
+
         /**
          * Thread-safe getting full-filled {@code list} of results method
          * <p>
-         * Waiting for list will be full-filled, then return
+         * Waiting for list will be full-filled or mapping function will fail, then return
          *
          * @return Full-filled {@code list} of results
          * @throws InterruptedException if thread was interrupted
          */
         private synchronized List<T> getList() throws InterruptedException {
-            while (contains != list.size()) {
+            while (contains != list.size() && failure == null) {
                 wait();
             }
+            if (failure != null) {
+                rethrow(failure);
+            }
             return list;
         }
     }
 
+    /**
+     * Rethrow failure of mapping function in the calling thread
+     *
+     * @param failure - thrown by mapping function
+     */
+    private static void rethrow(final Throwable failure) {
+        if (failure instanceof RuntimeException runtimeException) {
+            throw runtimeException;
+        }
+        if (failure instanceof Error error) {
+            throw error;
+        }
+        throw new IllegalStateException(failure);
+    }
+
+    /**
+     * Class with result of mapping function stored in preallocated array
+     * <p>
+     * Array is filled by contiguous blocks, each block is written by single thread
+     * without locking. Completed blocks are counted by atomic counter
+     * and the caller is notified once, when the last block is done
+     *
+     * @param <T> type of result
+     */
+    private static class ChunkedMappingResults<T> {
+
+        /**
+         * Array contains results
+         */
+        private final Object[] results;
+
+        /**
+         * Number of blocks not written yet
+         */
+        private final AtomicInteger remainingChunks;
+
+        /**
+         * Whether all blocks are written
+         */
+        private boolean done;
+
+        /**
+         * The first failure of mapping function or {@code null}, guarded by this
+         */
+        private Throwable failure;
+
+        /**
+         * Construct {@link ChunkedMappingResults} with given size and number of blocks
+         *
+         * @param size   - size of results array
+         * @param chunks - number of blocks array will be written by
+         */
+        private ChunkedMappingResults(final int size, final int chunks) {
+            results = new Object[size];
+            remainingChunks = new AtomicInteger(chunks);
+            done = false;
+        }
+
+        /**
+         * Setting element on index. Must be called only by the thread owning block containing {@code index}
+         *
+         * @param index - index on that element will be set
+         * @param res   - element that will be set
+         */
+        private void set(final int index, final T res) {
+            results[index] = res;
+        }
+
+        /**
+         * Thread-safe record failure of mapping function. Block must still be marked by {@link #completeChunk()}
+         *
+         * @param throwable - thrown by mapping function
+         */
+        private synchronized void fail(final Throwable throwable) {
+            if (failure == null) {
+                failure = throwable;
+            }
+        }
+
+        /**
+         * Mark one block as written or failed. When the last block is done notify
+         */
+        private void completeChunk() {
+            if (remainingChunks.decrementAndGet() == 0) {
+                synchronized (this) {
+                    done = true;
+                    notify();
+                }
+            }
+        }
+
+        /**
+         * Thread-safe getting full-filled {@code list} of results method
+         * <p>
+         * Waiting for all blocks will be done, then return or rethrow failure of mapping function
+         *
+         * @return Full-filled {@code list} of results
+         * @throws InterruptedException if thread was interrupted
+         */
+        @SuppressWarnings("unchecked")
+        private synchronized List<T> getList() throws InterruptedException {
+            while (!done) {
+                wait();
+            }
+            if (failure != null) {
+                rethrow(failure);
+            }
+            return (List<T>) Arrays.asList(results);
+        }
+    }
+
     /**
      * Maps function {@code function} over specified {@code list}.
      * Mapping for each element performed in parallel.
@@ -165,12 +533,511 @@ public class ParallelMapperImpl implements ParallelMapper {
     @Override
     public <T, R> List<R> map(final Function<? super T, ? extends R> function,
                               final List<? extends T> list) throws InterruptedException {
-        final ListOfMappingResults<R> results = new ListOfMappingResults<>(list.size());
-        for (int i = 0; i < list.size(); ++i) {
-            final int finalI = i;
-            tasks.add(() -> results.set(finalI, function.apply(list.get(finalI))));
+        return map(function, list, 0, 1);
+    }
+
+    /**
+     * Maps function {@code function} over specified {@code list}.
+     * Mapping for each element performed in parallel.
+     * <p>
+     * Tasks of this call form separate group, concurrent calls of the same {@code priority}
+     * are served round-robin, {@code weight} tasks of this call per turn.
+     * Calls of lower priority are served only when there are no tasks of higher priority
+     *
+     * @param function - mapping function
+     * @param list     - values to map
+     * @param priority - priority of this call, greater is served first
+     * @param weight   - positive number of tasks of this call served per turn
+     * @param <T>      - type of values
+     * @param <R>      - type of results
+     * @return {@link List} of mapped values
+     * @throws InterruptedException       if calling thread was interrupted
+     * @throws RuntimeException           if {@code function} threw it for some element
+     * @throws RejectedExecutionException if task queue is full and saturation policy is
+     *                                    {@link SaturationPolicy#REJECT}
+     */
+    public <T, R> List<R> map(final Function<? super T, ? extends R> function,
+                              final List<? extends T> list,
+                              final int priority,
+                              final int weight) throws InterruptedException {
+        final FairTaskQueue.TaskGroup group = new FairTaskQueue.TaskGroup(priority, weight);
+        final MapperEvents.Call event = new MapperEvents.Call();
+        event.begin();
+        final List<R> result;
+        if (resultMode == ResultMode.CHUNKED) {
+            result = mapChunked(function, list, group, event);
+        } else {
+            final ListOfMappingResults<R> results = new ListOfMappingResults<>(list.size());
+            for (int i = 0; i < list.size(); ++i) {
+                final int finalI = i;
+                submit(group, () -> {
+                    try {
+                        results.set(finalI, function.apply(list.get(finalI)));
+                    } catch (RuntimeException | Error e) {
+                        results.fail(e);
+                    }
+                });
+            }
+            metrics.tasksSubmitted(list.size());
+            growIfBacklogged();
+            result = awaitResults(results::getList, group, event);
+        }
+        if (event.shouldCommit()) {
+            event.size = list.size();
+            event.commit();
+        }
+        return result;
+    }
+
+    /**
+     * Add task to the queue, applying {@code saturationPolicy} if queue is full
+     *
+     * @param group - group of the task
+     * @param task  - task to add
+     * @throws InterruptedException if calling thread was interrupted while waiting for room in the queue
+     */
+    private void submit(final FairTaskQueue.TaskGroup group, final Runnable task) throws InterruptedException {
+        if (tasks.offer(group, task)) {
+            return;
         }
-        return results.getList();
+        // workers have to be started before the caller waits for them
+        growIfBacklogged();
+        switch (saturationPolicy) {
+            case BLOCK -> {
+                try {
+                    tasks.put(group, task);
+                } catch (InterruptedException e) {
+                    tasks.remove(group);
+                    throw e;
+                }
+            }
+            case CALLER_RUNS -> task.run();
+            case REJECT -> {
+                tasks.remove(group);
+                throw new RejectedExecutionException("Task queue is full");
+            }
+        }
+    }
+
+    /**
+     * Supplier of results, waiting for them
+     *
+     * @param <R> type of results
+     */
+    @FunctionalInterface
+    private interface ResultsWaiter<R> {
+        /**
+         * Wait for results and return them
+         *
+         * @return {@link List} of results
+         * @throws InterruptedException if thread was interrupted
+         */
+        List<R> await() throws InterruptedException;
+    }
+
+    /**
+     * Wait for results of submitted tasks, recording waiting time to metrics and {@code event}.
+     * If mapping function failed, queued tasks of {@code group} are dropped and failure is rethrown
+     *
+     * @param waiter - waiter for results
+     * @param group  - group of submitted tasks
+     * @param event  - JFR event of current {@code map} call
+     * @param <R>    - type of results
+     * @return {@link List} of results
+     * @throws InterruptedException if thread was interrupted
+     */
+    private <R> List<R> awaitResults(final ResultsWaiter<R> waiter,
+                                     final FairTaskQueue.TaskGroup group,
+                                     final MapperEvents.Call event) throws InterruptedException {
+        final boolean recording = event.isEnabled();
+        if (recording) {
+            event.queueDepth = tasks.size();
+        }
+        final long waitStart = recording ? System.nanoTime() : 0;
+        final long metricsWaitStart = metrics.now();
+        final List<R> result;
+        try {
+            result = waiter.await();
+        } catch (RuntimeException | Error e) {
+            tasks.remove(group);
+            throw e;
+        }
+        metrics.callerWaited(metricsWaitStart);
+        if (recording) {
+            event.waitNanos = System.nanoTime() - waitStart;
+        }
+        return result;
+    }
+
+    /**
+     * Maps function {@code function} over specified {@code list} by contiguous blocks.
+     * One task for each thread, each task maps own block of elements.
+     *
+     * @throws InterruptedException if calling thread was interrupted
+     */
+    private <T, R> List<R> mapChunked(final Function<? super T, ? extends R> function,
+                                      final List<? extends T> list,
+                                      final FairTaskQueue.TaskGroup group,
+                                      final MapperEvents.Call event) throws InterruptedException {
+        final int size = list.size();
+        if (size == 0) {
+            return List.of();
+        }
+        final int chunks = Math.min(maxThreads, size);
+        final ChunkedMappingResults<R> results = new ChunkedMappingResults<>(size, chunks);
+        final int chunkSize = size / chunks;
+        final int remainder = size % chunks;
+        int left = 0;
+        for (int i = 0; i < chunks; ++i) {
+            final int from = left;
+            final int to = from + chunkSize + (i < remainder ? 1 : 0);
+            submit(group, () -> {
+                try {
+                    for (int j = from; j < to; ++j) {
+                        results.set(j, function.apply(list.get(j)));
+                    }
+                } catch (RuntimeException | Error e) {
+                    results.fail(e);
+                } finally {
+                    results.completeChunk();
+                }
+            });
+            left = to;
+        }
+        metrics.tasksSubmitted(chunks);
+        growIfBacklogged();
+        return awaitResults(results::getList, group, event);
+    }
+
+    /**
+     * Maps function {@code function} over each of specified {@code lists} as a single job.
+     * <p>
+     * Values of all lists are mapped in parallel as one flattened list: tasks are submitted at once
+     * and the caller is woken up once, when all lists are done
+     *
+     * @param function - mapping function
+     * @param lists    - lists of values to map
+     * @param <T>      - type of values
+     * @param <R>      - type of results
+     * @return {@link List} of mapped values for each of {@code lists}, in order of {@code lists}
+     * @throws InterruptedException if calling thread was interrupted
+     * @throws RuntimeException     if {@code function} threw it for some element of any list
+     */
+    public <T, R> List<List<R>> mapAll(final Function<? super T, ? extends R> function,
+                                       final List<? extends List<? extends T>> lists) throws InterruptedException {
+        final int[] offsets = new int[lists.size() + 1];
+        for (int i = 0; i < lists.size(); ++i) {
+            offsets[i + 1] = offsets[i] + lists.get(i).size();
+        }
+        final int size = offsets[lists.size()];
+        final MapperEvents.Call event = new MapperEvents.Call();
+        event.begin();
+        final List<R> flat;
+        if (size == 0) {
+            flat = List.of();
+        } else {
+            final FairTaskQueue.TaskGroup group = new FairTaskQueue.TaskGroup(0, 1);
+            final int chunks = resultMode == ResultMode.CHUNKED ? Math.min(maxThreads, size) : size;
+            final ChunkedMappingResults<R> results = new ChunkedMappingResults<>(size, chunks);
+            final int chunkSize = size / chunks;
+            final int remainder = size % chunks;
+            int left = 0;
+            for (int i = 0; i < chunks; ++i) {
+                final int from = left;
+                final int to = from + chunkSize + (i < remainder ? 1 : 0);
+                submit(group, () -> {
+                    try {
+                        int list = listOf(offsets, from);
+                        for (int j = from; j < to; ++j) {
+                            while (offsets[list + 1] <= j) {
+                                list++;
+                            }
+                            results.set(j, function.apply(lists.get(list).get(j - offsets[list])));
+                        }
+                    } catch (RuntimeException | Error e) {
+                        results.fail(e);
+                    } finally {
+                        results.completeChunk();
+                    }
+                });
+                left = to;
+            }
+            metrics.tasksSubmitted(chunks);
+            growIfBacklogged();
+            flat = awaitResults(results::getList, group, event);
+        }
+        if (event.shouldCommit()) {
+            event.size = size;
+            event.commit();
+        }
+        final List<List<R>> result = new ArrayList<>(lists.size());
+        for (int i = 0; i < lists.size(); ++i) {
+            result.add(flat.subList(offsets[i], offsets[i + 1]));
+        }
+        return result;
+    }
+
+    /**
+     * Return index of list containing element of flattened list
+     *
+     * @param offsets - offsets of lists in flattened list, followed by its size
+     * @param index   - index of element in flattened list
+     * @return index of the last list starting at or before {@code index}
+     */
+    private static int listOf(final int[] offsets, final int index) {
+        int low = 0;
+        int high = offsets.length - 1;
+        while (high - low > 1) {
+            final int middle = (low + high) >>> 1;
+            if (offsets[middle] <= index) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Results of streaming mapping in ring buffer of {@code window} slots
+     * <p>
+     * Element {@code i} is written to slot {@code i % window}. Element {@code i + window}
+     * is submitted only after element {@code i} is consumed, so slot is free when written
+     *
+     * @param <T> type of result
+     */
+    private static class StreamingResults<T> {
+
+        /**
+         * Results not consumed yet
+         */
+        private final Object[] slots;
+
+        /**
+         * Whether slot contains result or failure
+         */
+        private final boolean[] ready;
+
+        /**
+         * Failure of mapping function for element in slot or {@code null}
+         */
+        private final Throwable[] failures;
+
+        /**
+         * Failure of submitting or waiting, aborting the whole mapping, or {@code null}
+         */
+        private RuntimeException aborted;
+
+        /**
+         * Construct {@link StreamingResults} with given window
+         *
+         * @param window - number of slots
+         */
+        private StreamingResults(final int window) {
+            slots = new Object[window];
+            ready = new boolean[window];
+            failures = new Throwable[window];
+        }
+
+        /**
+         * Thread-safe setting element on index. After setting element notify
+         *
+         * @param index - index on that element will be set
+         * @param res   - element that will be set
+         */
+        private synchronized void set(final int index, final T res) {
+            slots[index % slots.length] = res;
+            ready[index % slots.length] = true;
+            notify();
+        }
+
+        /**
+         * Thread-safe record failure of mapping function for element on index. After recording notify
+         *
+         * @param index     - index of element
+         * @param throwable - thrown by mapping function
+         */
+        private synchronized void fail(final int index, final Throwable throwable) {
+            failures[index % slots.length] = throwable;
+            ready[index % slots.length] = true;
+            notify();
+        }
+
+        /**
+         * Thread-safe abort the whole mapping. After aborting notify
+         *
+         * @param failure - exception thrown by every later {@link #take(int)}
+         */
+        private synchronized void abort(final RuntimeException failure) {
+            if (aborted == null) {
+                aborted = failure;
+            }
+            notify();
+        }
+
+        /**
+         * Wait for element on index, then take it from its slot.
+         * Failure of mapping function for the element is left in its slot, so it is rethrown again
+         *
+         * @param index - index of element
+         * @return element
+         * @throws InterruptedException if thread was interrupted
+         */
+        @SuppressWarnings("unchecked")
+        private synchronized T take(final int index) throws InterruptedException {
+            final int slot = index % slots.length;
+            while (!ready[slot] && aborted == null) {
+                wait();
+            }
+            if (aborted != null) {
+                throw aborted;
+            }
+            if (failures[slot] != null) {
+                rethrow(failures[slot]);
+            }
+            final T res = (T) slots[slot];
+            slots[slot] = null;
+            ready[slot] = false;
+            return res;
+        }
+    }
+
+    /**
+     * Maps function {@code function} over specified {@code list}, returning results as soon as they are ready.
+     * <p>
+     * Results are returned in order of {@code list}. At most {@code window} elements are mapped or
+     * buffered at any time: element {@code i + window} is submitted when element {@code i} is consumed.
+     * {@link Iterator#next()} waits for the next result. If waiting thread is interrupted,
+     * {@code next} restores interrupted status and throws {@link IllegalStateException}.
+     * If the next element could not be submitted, because of interrupt or saturation policy, {@code next}
+     * still returns taken result. In both cases mapping is aborted and every later {@code next} throws.
+     * Exception thrown by {@code function} is rethrown by {@code next} when it reaches the failed element,
+     * results of preceding elements are returned first. Later {@code next} calls rethrow it again
+     *
+     * @param function - mapping function
+     * @param list     - values to map
+     * @param window   - positive maximal number of elements mapped ahead of consumer
+     * @param <T>      - type of values
+     * @param <R>      - type of results
+     * @return {@link Iterator} over mapped values
+     * @throws InterruptedException if calling thread was interrupted while submitting the first window
+     */
+    public <T, R> Iterator<R> mapStreaming(final Function<? super T, ? extends R> function,
+                                           final List<? extends T> list,
+                                           final int window) throws InterruptedException {
+        if (window <= 0) {
+            throw new IllegalArgumentException("Expected positive window, found " + window);
+        }
+        final FairTaskQueue.TaskGroup group = new FairTaskQueue.TaskGroup(0, 1);
+        final StreamingResults<R> results = new StreamingResults<>(window);
+        final int size = list.size();
+        for (int i = 0; i < Math.min(window, size); ++i) {
+            submitStreaming(function, list, i, group, results);
+        }
+        growIfBacklogged();
+        return new Iterator<>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public R next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final R res;
+                try {
+                    res = results.take(next);
+                } catch (RuntimeException | Error e) {
+                    // later elements are never going to be consumed
+                    tasks.remove(group);
+                    throw e;
+                } catch (InterruptedException e) {
+                    abort(new IllegalStateException("Interrupted while waiting for result", e));
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for result", e);
+                }
+                // advanced before refilling, so taken result is returned even if refilling fails
+                final int refill = next++ + window;
+                if (refill < size) {
+                    try {
+                        submitStreaming(function, list, refill, group, results);
+                        growIfBacklogged();
+                    } catch (InterruptedException e) {
+                        abort(new IllegalStateException("Interrupted while submitting element " + refill, e));
+                        Thread.currentThread().interrupt();
+                    } catch (RuntimeException e) {
+                        abort(e);
+                    }
+                }
+                return res;
+            }
+
+            /**
+             * Drop queued tasks of the mapping and make every later {@link #next()} throw {@code failure},
+             * as some elements are never going to be mapped
+             *
+             * @param failure - exception to throw
+             */
+            private void abort(final RuntimeException failure) {
+                tasks.remove(group);
+                results.abort(failure);
+            }
+        };
+    }
+
+    /**
+     * Submit task mapping single element of streaming mapping
+     *
+     * @param function - mapping function
+     * @param list     - values to map
+     * @param index    - index of element
+     * @param group    - group of tasks of streaming mapping
+     * @param results  - results of streaming mapping
+     * @param <T>      - type of values
+     * @param <R>      - type of results
+     * @throws InterruptedException if thread was interrupted while waiting for room in the queue
+     */
+    private <T, R> void submitStreaming(final Function<? super T, ? extends R> function,
+                                        final List<? extends T> list,
+                                        final int index,
+                                        final FairTaskQueue.TaskGroup group,
+                                        final StreamingResults<R> results) throws InterruptedException {
+        submit(group, () -> {
+            try {
+                results.set(index, function.apply(list.get(index)));
+            } catch (RuntimeException | Error e) {
+                results.fail(index, e);
+            }
+        });
+        metrics.tasksSubmitted(1);
+    }
+
+    /**
+     * Return operational metrics of this mapper. Metrics are disabled by default,
+     * use {@link ParallelMapperMetrics#setEnabled(boolean)} to start collecting them
+     *
+     * @return metrics of this mapper
+     */
+    public ParallelMapperMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Register metrics of this mapper in platform MBean server.
+     * MBean is unregistered on {@link #close()}
+     *
+     * @param name - value of {@code name} key of MBean object name
+     * @throws JMException if MBean could not be registered
+     */
+    public synchronized void registerMBean(final String name) throws JMException {
+        final ObjectName objectName = new ObjectName(
+                getClass().getPackageName() + ":type=ParallelMapper,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, objectName);
+        mBeanName = objectName;
     }
 
     /**
@@ -192,6 +1059,21 @@ public class ParallelMapperImpl implements ParallelMapper {
      */
     @Override
     public void close() {
-        threads.forEach(this::stopThread);
+        final List<Thread> started;
+        synchronized (threads) {
+            closed = true;
+            started = List.copyOf(threads);
+        }
+        started.forEach(this::stopThread);
+        synchronized (this) {
+            if (mBeanName != null) {
+                try {
+                    ManagementFactory.getPlatformMBeanServer().unregisterMBean(mBeanName);
+                } catch (JMException ignored) {
+
+                }
+                mBeanName = null;
+            }
+        }
     }
 }
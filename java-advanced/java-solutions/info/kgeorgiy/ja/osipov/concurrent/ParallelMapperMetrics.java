@@ -0,0 +1,314 @@
+package info.kgeorgiy.ja.osipov.concurrent;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Operational metrics of {@link ParallelMapperImpl}
+ * <p>
+ * Collection is disabled by default. While disabled, {@link #now()} returns {@code 0}
+ * and all recording methods return immediately, so the only cost is a volatile read
+ *
+ * @author Osipov Daniil
+ */
+public class ParallelMapperMetrics implements ParallelMapperMetricsMBean {
+
+    /**
+     * Number of latency histogram buckets, one for each power of two nanoseconds
+     */
+    private static final int BUCKETS = Long.SIZE;
+
+    /**
+     * Minimal length of interval {@link #getTasksPerSecond()} is measured over
+     */
+    private static final long RATE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Whether metrics are collected
+     */
+    private volatile boolean enabled;
+
+    /**
+     * Supplier of current queue depth
+     */
+    private final IntSupplier queueDepth;
+
+    /**
+     * Supplier of current number of alive worker threads
+     */
+    private final IntSupplier poolSize;
+
+    /**
+     * Number of submitted tasks
+     */
+    private final LongAdder submitted = new LongAdder();
+
+    /**
+     * Number of completed tasks
+     */
+    private final LongAdder completed = new LongAdder();
+
+    /**
+     * Total time of completed tasks
+     */
+    private final LongAdder latencyNanos = new LongAdder();
+
+    /**
+     * Number of completed tasks by power of two of their time in nanoseconds
+     */
+    private final AtomicLongArray latencyHistogram = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Number of times caller waited for results
+     */
+    private final LongAdder callerWaits = new LongAdder();
+
+    /**
+     * Total time callers waited for results
+     */
+    private final LongAdder callerWaitNanos = new LongAdder();
+
+    /**
+     * Number of started worker threads above initial ones
+     */
+    private final LongAdder poolGrowths = new LongAdder();
+
+    /**
+     * Number of worker threads stopped after idle timeout
+     */
+    private final LongAdder poolShrinks = new LongAdder();
+
+    /**
+     * Statistics of alive workers
+     */
+    private final List<Worker> workers = new CopyOnWriteArrayList<>();
+
+    /**
+     * Time at the start of the last rate interval, guarded by this
+     */
+    private long previousRateTime = System.nanoTime();
+
+    /**
+     * Number of completed tasks at the start of the last rate interval, guarded by this
+     */
+    private long previousRateCompleted;
+
+    /**
+     * Time at the end of the last rate interval, guarded by this
+     */
+    private long lastRateTime = previousRateTime;
+
+    /**
+     * Number of completed tasks at the end of the last rate interval, guarded by this
+     */
+    private long lastRateCompleted;
+
+    /**
+     * Statistics of single worker thread
+     */
+    static class Worker {
+        /**
+         * Time spent running tasks
+         */
+        private final AtomicLong busyNanos = new AtomicLong();
+
+        /**
+         * Time spent waiting for tasks
+         */
+        private final AtomicLong idleNanos = new AtomicLong();
+    }
+
+    /**
+     * Construct disabled {@link ParallelMapperMetrics}
+     *
+     * @param queueDepth - supplier of current queue depth
+     * @param poolSize   - supplier of current number of alive worker threads
+     */
+    ParallelMapperMetrics(final IntSupplier queueDepth, final IntSupplier poolSize) {
+        this.queueDepth = queueDepth;
+        this.poolSize = poolSize;
+    }
+
+    /**
+     * Return current time for measuring intervals
+     *
+     * @return {@link System#nanoTime()} if metrics are enabled, else {@code 0}
+     */
+    long now() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Register statistics of new worker
+     *
+     * @return statistics of registered worker
+     */
+    Worker registerWorker() {
+        final Worker worker = new Worker();
+        workers.add(worker);
+        return worker;
+    }
+
+    /**
+     * Remove statistics of stopped worker
+     *
+     * @param worker - statistics of stopped worker
+     */
+    void unregisterWorker(final Worker worker) {
+        workers.remove(worker);
+    }
+
+    /**
+     * Record submitting of tasks
+     *
+     * @param count - number of submitted tasks
+     */
+    void tasksSubmitted(final int count) {
+        if (enabled) {
+            submitted.add(count);
+        }
+    }
+
+    /**
+     * Record completion of task by worker
+     *
+     * @param worker    - worker run the task
+     * @param pollStart - {@link #now()} before waiting for the task
+     * @param taskStart - {@link #now()} before running the task
+     */
+    void taskCompleted(final Worker worker, final long pollStart, final long taskStart) {
+        if (pollStart == 0 || taskStart == 0 || !enabled) {
+            return;
+        }
+        final long latency = System.nanoTime() - taskStart;
+        worker.idleNanos.addAndGet(taskStart - pollStart);
+        worker.busyNanos.addAndGet(latency);
+        completed.increment();
+        latencyNanos.add(latency);
+        latencyHistogram.incrementAndGet(latency > 0 ? BUCKETS - 1 - Long.numberOfLeadingZeros(latency) : 0);
+    }
+
+    /**
+     * Record caller waiting for results
+     *
+     * @param waitStart - {@link #now()} before waiting
+     */
+    void callerWaited(final long waitStart) {
+        if (waitStart == 0 || !enabled) {
+            return;
+        }
+        callerWaits.increment();
+        callerWaitNanos.add(System.nanoTime() - waitStart);
+    }
+
+    /**
+     * Record pool size change. Recorded even when metrics are disabled, as it is rare
+     *
+     * @param size - new number of alive worker threads
+     * @param grew - {@code true} if thread was started, {@code false} if stopped
+     */
+    void poolResized(final int size, final boolean grew) {
+        (grew ? poolGrowths : poolShrinks).increment();
+        final MapperEvents.PoolResize event = new MapperEvents.PoolResize();
+        if (event.shouldCommit()) {
+            event.size = size;
+            event.grew = grew;
+            event.commit();
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queueDepth.getAsInt();
+    }
+
+    @Override
+    public long getSubmittedTasks() {
+        return submitted.sum();
+    }
+
+    @Override
+    public long getCompletedTasks() {
+        return completed.sum();
+    }
+
+    @Override
+    public synchronized double getTasksPerSecond() {
+        final long time = System.nanoTime();
+        if (time - lastRateTime >= RATE_INTERVAL_NANOS) {
+            previousRateTime = lastRateTime;
+            previousRateCompleted = lastRateCompleted;
+            lastRateTime = time;
+            lastRateCompleted = completed.sum();
+        }
+        if (lastRateTime == previousRateTime) {
+            return 0;
+        }
+        return (lastRateCompleted - previousRateCompleted) * 1e9 / (lastRateTime - previousRateTime);
+    }
+
+    @Override
+    public double getMeanTaskLatencyNanos() {
+        final long count = completed.sum();
+        return count == 0 ? 0 : (double) latencyNanos.sum() / count;
+    }
+
+    @Override
+    public long[] getTaskLatencyHistogram() {
+        final long[] histogram = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; ++i) {
+            histogram[i] = latencyHistogram.get(i);
+        }
+        return histogram;
+    }
+
+    @Override
+    public long[] getWorkerBusyNanos() {
+        return workers.stream().mapToLong(worker -> worker.busyNanos.get()).toArray();
+    }
+
+    @Override
+    public long[] getWorkerIdleNanos() {
+        return workers.stream().mapToLong(worker -> worker.idleNanos.get()).toArray();
+    }
+
+    @Override
+    public long getCallerWaits() {
+        return callerWaits.sum();
+    }
+
+    @Override
+    public long getCallerWaitNanos() {
+        return callerWaitNanos.sum();
+    }
+
+    @Override
+    public int getPoolSize() {
+        return poolSize.getAsInt();
+    }
+
+    @Override
+    public long getPoolGrowths() {
+        return poolGrowths.sum();
+    }
+
+    @Override
+    public long getPoolShrinks() {
+        return poolShrinks.sum();
+    }
+}
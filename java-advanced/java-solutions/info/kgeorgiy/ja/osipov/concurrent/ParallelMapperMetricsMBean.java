@@ -0,0 +1,117 @@
+package info.kgeorgiy.ja.osipov.concurrent;
+
+/**
+ * JMX view of {@link ParallelMapperMetrics}
+ *
+ * @author Osipov Daniil
+ */
+public interface ParallelMapperMetricsMBean {
+
+    /**
+     * Return whether metrics are collected
+     *
+     * @return {@code true} if metrics are collected
+     */
+    boolean isEnabled();
+
+    /**
+     * Enable or disable metrics collection
+     *
+     * @param enabled - {@code true} to collect metrics
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * Return number of tasks waiting in the queue
+     *
+     * @return current queue depth
+     */
+    int getQueueDepth();
+
+    /**
+     * Return number of tasks submitted while metrics were enabled
+     *
+     * @return number of submitted tasks
+     */
+    long getSubmittedTasks();
+
+    /**
+     * Return number of tasks completed while metrics were enabled
+     *
+     * @return number of completed tasks
+     */
+    long getCompletedTasks();
+
+    /**
+     * Return completed tasks rate over the last interval of at least one second.
+     * Interval ends at the first call after the previous interval is over, so callers do not shorten
+     * intervals of each other
+     *
+     * @return tasks per second
+     */
+    double getTasksPerSecond();
+
+    /**
+     * Return mean task latency
+     *
+     * @return mean task latency in nanoseconds
+     */
+    double getMeanTaskLatencyNanos();
+
+    /**
+     * Return task latency histogram. Bucket {@code i} counts tasks
+     * with latency in {@code [2^i, 2^(i+1))} nanoseconds
+     *
+     * @return task latency histogram
+     */
+    long[] getTaskLatencyHistogram();
+
+    /**
+     * Return time each alive worker spent running tasks
+     *
+     * @return busy time in nanoseconds for each worker
+     */
+    long[] getWorkerBusyNanos();
+
+    /**
+     * Return time each alive worker spent waiting for tasks
+     *
+     * @return idle time in nanoseconds for each worker
+     */
+    long[] getWorkerIdleNanos();
+
+    /**
+     * Return number of {@code map} calls waited for results
+     *
+     * @return number of waiting calls
+     */
+    long getCallerWaits();
+
+    /**
+     * Return total time callers spent waiting for results
+     *
+     * @return total waiting time in nanoseconds
+     */
+    long getCallerWaitNanos();
+
+    /**
+     * Return number of alive worker threads
+     *
+     * @return current pool size
+     */
+    int getPoolSize();
+
+    /**
+     * Return number of threads started because of task backlog
+     *
+     * @return number of pool growths
+     */
+    long getPoolGrowths();
+
+    /**
+     * Return number of threads stopped after idle timeout
+     *
+     * @return number of pool shrinks
+     */
+    long getPoolShrinks();
+}
@@ -0,0 +1,384 @@
+package info.kgeorgiy.ja.osipov.concurrent;
+
+import info.kgeorgiy.java.advanced.concurrent.AdvancedIP;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Benchmark of {@link IterativeParallelism} operations
+ * <p>
+ * Measures each {@link AdvancedIP} operation over lists of different sizes with different numbers
+ * of threads, cheap and expensive functions and four backends: {@link IterativeParallelism} with
+ * its own threads, {@link IterativeParallelism} over {@link ParallelMapperImpl}, parallel stream
+ * in common pool and parallel stream in {@link ForkJoinPool} of given parallelism.
+ * Each case is warmed up, then run repeatedly for fixed time.
+ * Results are written as CSV: time and allocated bytes per operation, and speedup
+ * relative to the same case run by one thread of the same backend
+ * <p>
+ * Usage: {@code ParallelismBenchmark output.csv [warmupMillis measureMillis]}
+ *
+ * @author Osipov Daniil
+ */
+public final class ParallelismBenchmark {
+
+    /**
+     * Sizes of benchmarked lists
+     */
+    private static final int[] SIZES = {1_000, 100_000, 1_000_000};
+
+    /**
+     * Numbers of threads
+     */
+    private static final int[] THREADS = {1, 2, 4, 8, 16};
+
+    /**
+     * CSV header
+     */
+    private static final String HEADER =
+            "operation,backend,size,threads,function,iterations,nanosPerOp,bytesPerOp,speedup";
+
+    /**
+     * Sink of results, so they could not be eliminated
+     */
+    private static volatile int sink;
+
+    /**
+     * Utility class
+     */
+    private ParallelismBenchmark() {
+    }
+
+    /**
+     * Ways of running operation
+     */
+    private enum Backend {
+        /**
+         * {@link IterativeParallelism} starting own threads
+         */
+        THREADS,
+        /**
+         * {@link IterativeParallelism} over {@link ParallelMapperImpl}
+         */
+        MAPPER,
+        /**
+         * Parallel stream in common {@link ForkJoinPool}, number of threads is ignored
+         */
+        PARALLEL_STREAM,
+        /**
+         * Parallel stream in {@link ForkJoinPool} of given parallelism
+         */
+        FORK_JOIN
+    }
+
+    /**
+     * Cost of user functions
+     */
+    private enum Cost {
+        /**
+         * Function of few instructions
+         */
+        CHEAP(0),
+        /**
+         * Function of a few hundred instructions
+         */
+        EXPENSIVE(100);
+
+        /**
+         * Number of mixing rounds
+         */
+        private final int rounds;
+
+        /**
+         * Construct cost with given number of mixing rounds
+         *
+         * @param rounds number of mixing rounds
+         */
+        Cost(final int rounds) {
+            this.rounds = rounds;
+        }
+
+        /**
+         * Compute non-negative function of value taking time proportional to {@code rounds}
+         *
+         * @param value value
+         * @return non-negative result
+         */
+        private int work(final int value) {
+            int result = value;
+            for (int i = 0; i < rounds; ++i) {
+                result = result * 0x9E3779B9 + i;
+                result ^= result >>> 16;
+            }
+            return result & Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Benchmarked operation
+     *
+     * @param name     name of operation
+     * @param parallel operation run by {@link IterativeParallelism}
+     * @param stream   the same operation run by parallel stream
+     */
+    private record Operation(String name, ParallelOperation parallel, Function<List<Integer>, Object> stream) {
+    }
+
+    /**
+     * Operation run by {@link IterativeParallelism}
+     */
+    @FunctionalInterface
+    private interface ParallelOperation {
+        /**
+         * Run operation
+         *
+         * @param parallelism instance to run operation by
+         * @param threads     number of threads
+         * @param values      values
+         * @return result of operation
+         * @throws InterruptedException if thread was interrupted
+         */
+        Object run(IterativeParallelism parallelism, int threads, List<Integer> values) throws InterruptedException;
+    }
+
+    /**
+     * Return benchmarked operations with functions of given cost
+     *
+     * @param cost cost of functions
+     * @return all operations of {@link AdvancedIP}
+     */
+    private static List<Operation> operations(final Cost cost) {
+        final Comparator<Integer> comparator = Comparator.comparingInt(cost::work);
+        // never satisfied, so all values are checked
+        final Predicate<Integer> never = value -> cost.work(value) < 0;
+        final Predicate<Integer> even = value -> cost.work(value) % 2 == 0;
+        final Function<Integer, Integer> lift = cost::work;
+        final AdvancedIP.Monoid<Integer> sum = new AdvancedIP.Monoid<>(0, Integer::sum);
+        return List.of(
+                new Operation("join",
+                        (ip, threads, values) -> ip.join(threads, values),
+                        values -> values.parallelStream().map(String::valueOf).collect(Collectors.joining())),
+                new Operation("filter",
+                        (ip, threads, values) -> ip.filter(threads, values, even),
+                        values -> values.parallelStream().filter(even).toList()),
+                new Operation("map",
+                        (ip, threads, values) -> ip.map(threads, values, lift),
+                        values -> values.parallelStream().map(lift).toList()),
+                new Operation("maximum",
+                        (ip, threads, values) -> ip.maximum(threads, values, comparator),
+                        values -> values.parallelStream().max(comparator).orElseThrow()),
+                new Operation("minimum",
+                        (ip, threads, values) -> ip.minimum(threads, values, comparator),
+                        values -> values.parallelStream().min(comparator).orElseThrow()),
+                new Operation("all",
+                        (ip, threads, values) -> ip.all(threads, values, never.negate()),
+                        values -> values.parallelStream().allMatch(never.negate())),
+                new Operation("any",
+                        (ip, threads, values) -> ip.any(threads, values, never),
+                        values -> values.parallelStream().anyMatch(never)),
+                new Operation("count",
+                        (ip, threads, values) -> ip.count(threads, values, even),
+                        values -> values.parallelStream().filter(even).count()),
+                new Operation("reduce",
+                        (ip, threads, values) -> ip.reduce(threads, values, sum),
+                        values -> values.parallelStream().reduce(sum.getIdentity(), sum.getOperator())),
+                new Operation("mapReduce",
+                        (ip, threads, values) -> ip.mapReduce(threads, values, lift, sum),
+                        values -> values.parallelStream().map(lift).reduce(sum.getIdentity(), sum.getOperator()))
+        );
+    }
+
+    /**
+     * Action measured by benchmark
+     */
+    @FunctionalInterface
+    private interface Action {
+        /**
+         * Run action once
+         *
+         * @return result of action
+         * @throws Exception if action failed
+         */
+        Object run() throws Exception;
+    }
+
+    /**
+     * Measurement of single case
+     *
+     * @param iterations number of measured runs
+     * @param nanosPerOp mean time of run in nanoseconds
+     * @param bytesPerOp mean bytes allocated by all threads during run
+     */
+    private record Measurement(long iterations, double nanosPerOp, double bytesPerOp) {
+    }
+
+    /**
+     * Warm up and measure action
+     *
+     * @param action       action to measure
+     * @param warmupNanos  time of warm-up
+     * @param measureNanos time of measurement
+     * @return measurement
+     * @throws Exception if action failed
+     */
+    private static Measurement measure(final Action action,
+                                       final long warmupNanos,
+                                       final long measureNanos) throws Exception {
+        final long warmupEnd = System.nanoTime() + warmupNanos;
+        while (System.nanoTime() < warmupEnd) {
+            sink += Objects.hashCode(action.run());
+        }
+        final long allocatedStart = allocatedBytes();
+        final long start = System.nanoTime();
+        long iterations = 0;
+        long now;
+        do {
+            sink += Objects.hashCode(action.run());
+            iterations++;
+            now = System.nanoTime();
+        } while (now - start < measureNanos);
+        final long allocated = allocatedBytes() - allocatedStart;
+        return new Measurement(iterations, (double) (now - start) / iterations, (double) allocated / iterations);
+    }
+
+    /**
+     * Return total number of bytes allocated by all threads of the JVM, including finished ones
+     *
+     * @return allocated bytes or {@code -1} if not supported
+     */
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                && threads.isThreadAllocatedMemoryEnabled()) {
+            return threads.getTotalThreadAllocatedBytes();
+        }
+        return -1;
+    }
+
+    /**
+     * Run benchmark
+     *
+     * @param args output file, optionally warm-up and measurement time in milliseconds
+     */
+    public static void main(final String[] args) {
+        if (Objects.isNull(args) || (args.length != 1 && args.length != 3)
+                || Arrays.stream(args).anyMatch(Objects::isNull)) {
+            System.err.println("Usage: ParallelismBenchmark output.csv [warmupMillis measureMillis]");
+            return;
+        }
+        final long warmupNanos;
+        final long measureNanos;
+        try {
+            warmupNanos = (args.length == 3 ? Long.parseLong(args[1]) : 200) * 1_000_000;
+            measureNanos = (args.length == 3 ? Long.parseLong(args[2]) : 500) * 1_000_000;
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid time. " + e.getMessage());
+            return;
+        }
+        try (final PrintWriter out = new PrintWriter(
+                Files.newBufferedWriter(Path.of(args[0]), StandardCharsets.UTF_8))) {
+            out.println(HEADER);
+            for (final Cost cost : Cost.values()) {
+                for (final Operation operation : operations(cost)) {
+                    for (final int size : SIZES) {
+                        final List<Integer> values = IntStream.range(0, size).boxed().toList();
+                        for (final Backend backend : Backend.values()) {
+                            runCase(out, operation, backend, cost, values, warmupNanos, measureNanos);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Output error. " + e.getMessage());
+        } catch (InterruptedException e) {
+            System.err.println("Benchmark was interrupted");
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("Benchmark failed. " + e);
+        }
+    }
+
+    /**
+     * Measure operation by given backend for all numbers of threads and write results
+     *
+     * @param out          CSV output
+     * @param operation    operation to measure
+     * @param backend      backend running operation
+     * @param cost         cost of functions
+     * @param values       values
+     * @param warmupNanos  time of warm-up
+     * @param measureNanos time of measurement
+     * @throws Exception if operation failed
+     */
+    private static void runCase(final PrintWriter out,
+                                final Operation operation,
+                                final Backend backend,
+                                final Cost cost,
+                                final List<Integer> values,
+                                final long warmupNanos,
+                                final long measureNanos) throws Exception {
+        double singleThreadNanos = Double.NaN;
+        final int[] threadCounts = backend == Backend.PARALLEL_STREAM
+                ? new int[]{ForkJoinPool.getCommonPoolParallelism()}
+                : THREADS;
+        for (final int threads : threadCounts) {
+            final Measurement measurement = switch (backend) {
+                case THREADS -> measure(
+                        () -> operation.parallel().run(new IterativeParallelism(null, false), threads, values),
+                        warmupNanos, measureNanos);
+                case MAPPER -> {
+                    try (final ParallelMapperImpl mapper = new ParallelMapperImpl(threads)) {
+                        final IterativeParallelism parallelism = new IterativeParallelism(mapper, false);
+                        yield measure(() -> operation.parallel().run(parallelism, threads, values),
+                                warmupNanos, measureNanos);
+                    }
+                }
+                case PARALLEL_STREAM -> measure(() -> operation.stream().apply(values), warmupNanos, measureNanos);
+                case FORK_JOIN -> {
+                    final ForkJoinPool pool = new ForkJoinPool(threads);
+                    try {
+                        yield measure(() -> forkJoin(pool, operation, values), warmupNanos, measureNanos);
+                    } finally {
+                        pool.shutdown();
+                    }
+                }
+            };
+            if (threads == 1) {
+                singleThreadNanos = measurement.nanosPerOp();
+            }
+            final String line = String.format(Locale.ROOT, "%s,%s,%d,%d,%s,%d,%.1f,%.1f,%.3f",
+                    operation.name(), backend, values.size(), threads, cost,
+                    measurement.iterations(), measurement.nanosPerOp(), measurement.bytesPerOp(),
+                    singleThreadNanos / measurement.nanosPerOp());
+            out.println(line);
+            out.flush();
+            System.out.println(line);
+        }
+    }
+
+    /**
+     * Run parallel stream operation in given pool
+     *
+     * @param pool      pool to run in
+     * @param operation operation to run
+     * @param values    values
+     * @return result of operation
+     * @throws InterruptedException if thread was interrupted
+     * @throws ExecutionException   if operation failed
+     */
+    private static Object forkJoin(final ForkJoinPool pool,
+                                   final Operation operation,
+                                   final List<Integer> values) throws InterruptedException, ExecutionException {
+        return pool.submit(() -> operation.stream().apply(values)).get();
+    }
+}
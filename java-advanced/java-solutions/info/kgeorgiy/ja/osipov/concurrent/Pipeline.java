@@ -0,0 +1,231 @@
+package info.kgeorgiy.ja.osipov.concurrent;
+
+import info.kgeorgiy.java.advanced.concurrent.AdvancedIP;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Lazy chain of operators over a list, executed by {@link IterativeParallelism}.
+ * <p>
+ * Intermediate operators ({@link #filter(Predicate)}, {@link #map(Function)}) only compose
+ * stream stages. Terminal operators split source list on parts once and apply all composed
+ * stages to each part in a single parallel pass, so no intermediate lists are materialized.
+ *
+ * @param <S> source value type
+ * @param <T> value type produced by composed stages
+ * @author Osipov Daniil
+ */
+public class Pipeline<S, T> {
+
+    /**
+     * {@link IterativeParallelism} executing terminal operations
+     */
+    private final IterativeParallelism parallelism;
+
+    /**
+     * Number of concurrent threads
+     */
+    private final int numOfThreads;
+
+    /**
+     * Source {@link List} values
+     */
+    private final List<S> values;
+
+    /**
+     * Composition of all intermediate stages applied to part of source values
+     */
+    private final Function<Stream<S>, Stream<T>> stages;
+
+    /**
+     * User functions of intermediate stages, identify pipeline for cost estimation
+     */
+    private final List<Object> functions;
+
+    /**
+     * Construct {@link Pipeline} with given source and stages
+     *
+     * @param parallelism  {@link IterativeParallelism} executing terminal operations
+     * @param numOfThreads number of concurrent threads
+     * @param values       source {@link List} values
+     * @param stages       composition of intermediate stages
+     * @param functions    user functions of intermediate stages
+     */
+    Pipeline(final IterativeParallelism parallelism,
+             final int numOfThreads,
+             final List<S> values,
+             final Function<Stream<S>, Stream<T>> stages,
+             final List<Object> functions) {
+        this.parallelism = parallelism;
+        this.numOfThreads = numOfThreads;
+        this.values = values;
+        this.stages = stages;
+        this.functions = functions;
+    }
+
+    /**
+     * Return pipeline with appended stage
+     *
+     * @param stage    stage to append
+     * @param function user function of the stage
+     * @param <U>      value type produced by appended stage
+     * @return new {@link Pipeline} sharing source with this one
+     */
+    private <U> Pipeline<S, U> append(final Function<Stream<T>, Stream<U>> stage, final Object function) {
+        final List<Object> appended = new ArrayList<>(functions);
+        appended.add(function);
+        return new Pipeline<>(parallelism, numOfThreads, values, stages.andThen(stage), appended);
+    }
+
+    /**
+     * Apply terminal operation to each part and reduce parts results
+     *
+     * @param name              name of terminal operation
+     * @param terminal          terminal operation applied to stream of part values after all stages
+     * @param reduceFunction    {@link Function} to reduce parts
+     * @param terminalFunctions user functions of terminal operation
+     * @param <R>               result type
+     * @return reduced result
+     * @throws InterruptedException if executing thread was interrupted
+     */
+    private <R> R evaluate(final String name,
+                           final Function<Stream<T>, R> terminal,
+                           final Function<Stream<R>, R> reduceFunction,
+                           final Object... terminalFunctions) throws InterruptedException {
+        final List<Object> all = new ArrayList<>(functions);
+        all.addAll(List.of(terminalFunctions));
+        final ExecutionPlanner.CostKey key = new ExecutionPlanner.CostKey(
+                "pipeline." + name, ExecutionPlanner.CostKey.classes(all));
+        return parallelism.request(key, numOfThreads, values, stages.andThen(terminal), reduceFunction);
+    }
+
+    /**
+     * Filters values by predicate. Lazy: evaluated by terminal operation.
+     *
+     * @param predicate filter predicate
+     * @return pipeline of values satisfying given predicate
+     */
+    public Pipeline<S, T> filter(final Predicate<? super T> predicate) {
+        return append(stream -> stream.filter(predicate), predicate);
+    }
+
+    /**
+     * Maps values. Lazy: evaluated by terminal operation.
+     *
+     * @param function mapper function
+     * @param <U>      mapped value type
+     * @return pipeline of values mapped by given function
+     */
+    public <U> Pipeline<S, U> map(final Function<? super T, ? extends U> function) {
+        return append(stream -> stream.map(function), function);
+    }
+
+    /**
+     * Collects values to list.
+     *
+     * @return list of pipeline values. Order of values is preserved.
+     * @throws InterruptedException if executing thread was interrupted
+     */
+    public List<T> toList() throws InterruptedException {
+        return evaluate("toList",
+                stream -> stream.collect(Collectors.toList()),
+                stream -> stream.flatMap(List::stream).collect(Collectors.toList()));
+    }
+
+    /**
+     * Reduces values using monoid.
+     *
+     * @param monoid monoid to use
+     * @return values reduced by provided monoid or {@link AdvancedIP.Monoid#getIdentity() identity},
+     * if no values left
+     * @throws InterruptedException if executing thread was interrupted
+     */
+    public T reduce(final AdvancedIP.Monoid<T> monoid) throws InterruptedException {
+        return mapReduce(Function.identity(), monoid);
+    }
+
+    /**
+     * Maps and reduces values using monoid.
+     *
+     * @param lift   mapping function
+     * @param monoid monoid to use
+     * @param <R>    reduced value type
+     * @return values reduced by provided monoid or {@link AdvancedIP.Monoid#getIdentity() identity},
+     * if no values left
+     * @throws InterruptedException if executing thread was interrupted
+     */
+    public <R> R mapReduce(final Function<? super T, R> lift,
+                           final AdvancedIP.Monoid<R> monoid) throws InterruptedException {
+        return evaluate("mapReduce",
+                stream -> stream.map(lift).reduce(monoid.getIdentity(), monoid.getOperator()),
+                stream -> stream.reduce(monoid.getIdentity(), monoid.getOperator()),
+                lift, monoid.getOperator());
+    }
+
+    /**
+     * Returns number of values.
+     *
+     * @return number of pipeline values
+     * @throws InterruptedException if executing thread was interrupted
+     */
+    public long count() throws InterruptedException {
+        return evaluate("count", Stream::count, stream -> stream.mapToLong(Long::longValue).sum());
+    }
+
+    /**
+     * Returns whether any of values satisfies predicate.
+     *
+     * @param predicate test predicate
+     * @return whether any value satisfies predicate or {@code false}, if no values left
+     * @throws InterruptedException if executing thread was interrupted
+     */
+    public boolean any(final Predicate<? super T> predicate) throws InterruptedException {
+        return evaluate("any",
+                stream -> stream.anyMatch(predicate),
+                stream -> stream.anyMatch(Boolean::booleanValue),
+                predicate);
+    }
+
+    /**
+     * Returns whether all values satisfy predicate.
+     *
+     * @param predicate test predicate
+     * @return whether all values satisfy predicate or {@code true}, if no values left
+     * @throws InterruptedException if executing thread was interrupted
+     */
+    public boolean all(final Predicate<? super T> predicate) throws InterruptedException {
+        return !any(predicate.negate());
+    }
+
+    /**
+     * Returns maximum value.
+     *
+     * @param comparator value comparator
+     * @return maximum of pipeline values
+     * @throws InterruptedException             if executing thread was interrupted
+     * @throws java.util.NoSuchElementException if no values left
+     */
+    public T maximum(final Comparator<? super T> comparator) throws InterruptedException {
+        return this.<Optional<T>>evaluate("maximum",
+                stream -> stream.max(comparator),
+                stream -> stream.flatMap(Optional::stream).max(comparator),
+                comparator
+        ).orElseThrow(NoSuchElementException::new);
+    }
+
+    /**
+     * Returns minimum value.
+     *
+     * @param comparator value comparator
+     * @return minimum of pipeline values
+     * @throws InterruptedException             if executing thread was interrupted
+     * @throws java.util.NoSuchElementException if no values left
+     */
+    public T minimum(final Comparator<? super T> comparator) throws InterruptedException {
+        return maximum(Collections.reverseOrder(comparator));
+    }
+}
@@ -0,0 +1,262 @@
+package info.kgeorgiy.ja.osipov.concurrent;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Worker process of {@link ProcessParallelMapper}
+ * <p>
+ * Reads chunks from a connection, maps them one by one and writes results back.
+ * Frame is {@code int} length followed by serialized object. Reply is {@code boolean} success flag
+ * followed by frame with {@link List} of results or {@link Throwable} thrown by function.
+ * Frames longer than {@link #MAX_FRAME_BYTES} are rejected, deserialized objects are limited by {@link #FILTER}.
+ * Worker deserializes whatever peer sends, so it must be reachable only by trusted mappers
+ * <p>
+ * Usage:
+ * <ul>
+ *     <li>{@code --connect port} connect to mapper listening on loopback {@code port}, send it token
+ *     from environment variable {@link #TOKEN_ENV}, exit when it disconnects</li>
+ *     <li>{@code --listen port} serve mappers connecting to loopback {@code port}</li>
+ *     <li>{@code --listen-unix path} serve mappers connecting to Unix-domain socket {@code path}</li>
+ * </ul>
+ *
+ * @author Osipov Daniil
+ */
+public final class ProcessMapperWorker {
+
+    /**
+     * Maximal length of frame, so peer cannot make reader allocate arbitrary amount of memory
+     */
+    static final int MAX_FRAME_BYTES = 256 << 20;
+
+    /**
+     * Environment variable with hex token worker started by mapper sends right after connecting.
+     * Environment of a process, unlike its command line, is not visible to other users
+     */
+    static final String TOKEN_ENV = "PROCESS_MAPPER_TOKEN";
+
+    /**
+     * Number of bytes in token
+     */
+    static final int TOKEN_BYTES = 32;
+
+    /**
+     * Limits of deserialized objects. Functions and values are arbitrary classes, so only sizes are limited:
+     * array of length {@code n} takes at least {@code n} bytes of frame
+     */
+    static final ObjectInputFilter FILTER = ObjectInputFilter.Config.createFilter(
+            "maxbytes=" + MAX_FRAME_BYTES + ";maxarray=" + MAX_FRAME_BYTES + ";maxdepth=1000");
+
+    /**
+     * Utility class
+     */
+    private ProcessMapperWorker() {
+    }
+
+    /**
+     * Chunk of values to map
+     *
+     * @param function mapping function
+     * @param values   values to map
+     */
+    record Chunk(Function<Object, Object> function, List<Object> values) implements Serializable {
+    }
+
+    /**
+     * Entry point of worker process
+     *
+     * @param args mode and address, see class description
+     */
+    public static void main(final String[] args) {
+        if (Objects.isNull(args) || args.length != 2 || Objects.isNull(args[0]) || Objects.isNull(args[1])) {
+            System.err.println("Expected 2 non-null arguments: (--connect | --listen | --listen-unix) address");
+            return;
+        }
+        try {
+            switch (args[0]) {
+                case "--connect" -> {
+                    final String token = System.getenv(TOKEN_ENV);
+                    if (Objects.isNull(token)) {
+                        System.err.println("Expected token in environment variable " + TOKEN_ENV);
+                        return;
+                    }
+                    serve(SocketChannel.open(
+                            new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(args[1]))),
+                            HexFormat.of().parseHex(token));
+                }
+                case "--listen" -> listen(ServerSocketChannel.open().bind(
+                        new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(args[1]))));
+                case "--listen-unix" -> {
+                    final Path path = Path.of(args[1]);
+                    Files.deleteIfExists(path);
+                    listen(ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+                            .bind(UnixDomainSocketAddress.of(path)));
+                }
+                default -> System.err.println("Unknown mode " + args[0]);
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid port. " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Invalid token. " + e.getMessage());
+        } catch (IOException e) {
+            System.err.println("Worker IO error. " + e.getMessage());
+        }
+    }
+
+    /**
+     * Accept mappers and serve each one in separate thread
+     *
+     * @param server bound server channel
+     * @throws IOException if accepting failed
+     */
+    private static void listen(final ServerSocketChannel server) throws IOException {
+        try (server) {
+            while (!Thread.interrupted()) {
+                final SocketChannel channel = server.accept();
+                new Thread(() -> {
+                    try {
+                        serve(channel, null);
+                    } catch (IOException e) {
+                        System.err.println("Connection IO error. " + e.getMessage());
+                    }
+                }).start();
+            }
+        }
+    }
+
+    /**
+     * Map chunks read from connection until peer disconnects
+     *
+     * @param channel connection to mapper
+     * @param token   token sent to mapper before serving or {@code null}
+     * @throws IOException if connection failed
+     */
+    private static void serve(final SocketChannel channel, final byte[] token) throws IOException {
+        try (channel;
+             final DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+             final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+            if (Objects.nonNull(token)) {
+                out.write(token);
+                out.flush();
+            }
+            while (true) {
+                final byte[] request;
+                try {
+                    request = readFrame(in);
+                } catch (EOFException e) {
+                    return;
+                }
+                byte[] reply;
+                boolean success;
+                try {
+                    final Chunk chunk = (Chunk) deserialize(request);
+                    final List<Object> results = new ArrayList<>(chunk.values().size());
+                    for (final Object value : chunk.values()) {
+                        results.add(chunk.function().apply(value));
+                    }
+                    reply = serialize(results);
+                    success = true;
+                    if (reply.length > MAX_FRAME_BYTES) {
+                        reply = serializeThrowable(new IllegalStateException(
+                                "Results of chunk take " + reply.length + " bytes, at most " + MAX_FRAME_BYTES + " expected"));
+                        success = false;
+                    }
+                } catch (Throwable e) {
+                    reply = serializeThrowable(e);
+                    success = false;
+                }
+                out.writeBoolean(success);
+                writeFrame(out, reply);
+                out.flush();
+            }
+        }
+    }
+
+    /**
+     * Serialize throwable, replacing it by its description if it is not serializable
+     *
+     * @param throwable throwable to serialize
+     * @return serialized throwable
+     * @throws IOException if even description could not be serialized
+     */
+    private static byte[] serializeThrowable(final Throwable throwable) throws IOException {
+        try {
+            return serialize(throwable);
+        } catch (NotSerializableException e) {
+            return serialize(new RuntimeException(throwable.toString()));
+        }
+    }
+
+    /**
+     * Serialize object to bytes
+     *
+     * @param object object to serialize
+     * @return serialized object
+     * @throws IOException if object is not serializable
+     */
+    static byte[] serialize(final Object object) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Deserialize object from bytes
+     *
+     * @param bytes serialized object
+     * @return deserialized object
+     * @throws IOException            if bytes are corrupted
+     * @throws ClassNotFoundException if class of object is not found
+     */
+    static Object deserialize(final byte[] bytes) throws IOException, ClassNotFoundException {
+        try (final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            final ObjectInputFilter global = in.getObjectInputFilter();
+            in.setObjectInputFilter(Objects.isNull(global) ? FILTER : ObjectInputFilter.merge(FILTER, global));
+            return in.readObject();
+        }
+    }
+
+    /**
+     * Write length-prefixed frame
+     *
+     * @param out   stream to write to
+     * @param frame frame content
+     * @throws IOException if writing failed
+     */
+    static void writeFrame(final DataOutputStream out, final byte[] frame) throws IOException {
+        out.writeInt(frame.length);
+        out.write(frame);
+    }
+
+    /**
+     * Read length-prefixed frame
+     *
+     * @param in stream to read from
+     * @return frame content
+     * @throws IOException if reading failed, stream ended or length is negative or above {@link #MAX_FRAME_BYTES}
+     */
+    static byte[] readFrame(final DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0 || length > MAX_FRAME_BYTES) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        final byte[] frame = new byte[length];
+        in.readFully(frame);
+        return frame;
+    }
+}
@@ -0,0 +1,615 @@
+package info.kgeorgiy.ja.osipov.concurrent;
+
+import info.kgeorgiy.java.advanced.mapper.ParallelMapper;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * {@link ParallelMapper} spreading chunks of values over worker JVM processes
+ * <p>
+ * Workers are {@link ProcessMapperWorker} processes, either started by this mapper
+ * with the same class path and module path or attached by address.
+ * Function and values are sent serialized, so function must be {@link Serializable},
+ * for lambdas use intersection cast {@code (Function<T, R> & Serializable)}.
+ * Chunk of a worker died is retried on another worker, results are reassembled in order
+ * <p>
+ * Exception thrown by function in worker is rethrown by {@link #map(Function, List)}
+ * if it is unchecked, otherwise wrapped in {@link IllegalStateException}
+ *
+ * @author Osipov Daniil
+ */
+public class ProcessParallelMapper implements ParallelMapper {
+
+    /**
+     * Number of chunks per worker, more chunks balance load and make retries cheaper
+     */
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    /**
+     * Maximal number of workers chunk is sent to
+     */
+    private static final int MAX_ATTEMPTS = 3;
+
+    /**
+     * Time started worker has to connect back
+     */
+    private static final int CONNECT_TIMEOUT_MILLIS = 30_000;
+
+    /**
+     * Source of tokens of started workers
+     */
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /**
+     * Processes started by this mapper
+     */
+    private final List<Process> processes = new ArrayList<>();
+
+    /**
+     * Connections to alive workers
+     */
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Alive threads exchanging chunks with workers, one per connection
+     */
+    private final Set<Thread> dispatchers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Chunks waiting for a worker
+     */
+    private final Deque<ChunkTask> pending = new ArrayDeque<>();
+
+    /**
+     * Number of alive workers
+     */
+    private final AtomicInteger liveWorkers = new AtomicInteger();
+
+    /**
+     * Whether {@link #close()} was called
+     */
+    private volatile boolean closed;
+
+    /**
+     * Construct {@link ProcessParallelMapper} with given number of started worker processes
+     *
+     * @param numberOfProcesses - number of worker processes
+     * @throws IOException if workers could not be started
+     */
+    public ProcessParallelMapper(final int numberOfProcesses) throws IOException {
+        this(numberOfProcesses, List.of());
+    }
+
+    /**
+     * Construct {@link ProcessParallelMapper} with given number of started worker processes
+     * <p>
+     * Workers connect back to loopback port of this mapper and authenticate by random token
+     * passed in their environment. Connections not sending the token are dropped,
+     * so other local processes cannot pose as workers
+     *
+     * @param numberOfProcesses - number of worker processes
+     * @param jvmOptions        - options of worker JVM, for example maximal heap size
+     * @throws IOException if workers could not be started
+     */
+    public ProcessParallelMapper(final int numberOfProcesses, final List<String> jvmOptions) throws IOException {
+        if (numberOfProcesses <= 0) {
+            throw new IllegalArgumentException("Invalid number of processes: " + numberOfProcesses);
+        }
+        final byte[] token = new byte[ProcessMapperWorker.TOKEN_BYTES];
+        RANDOM.nextBytes(token);
+        try (final ServerSocket server = new ServerSocket(0, numberOfProcesses, InetAddress.getLoopbackAddress())) {
+            final ProcessBuilder builder = new ProcessBuilder(workerCommand(jvmOptions, server.getLocalPort()))
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT);
+            builder.environment().put(ProcessMapperWorker.TOKEN_ENV, HexFormat.of().formatHex(token));
+            for (int i = 0; i < numberOfProcesses; ++i) {
+                processes.add(builder.start());
+            }
+            final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CONNECT_TIMEOUT_MILLIS);
+            int connected = 0;
+            while (connected < numberOfProcesses) {
+                server.setSoTimeout(remainingMillis(deadline));
+                final Socket socket = server.accept();
+                if (authenticate(socket, token, deadline)) {
+                    startDispatcher(new Connection(socket, socket.getInputStream(), socket.getOutputStream()));
+                    connected++;
+                } else {
+                    socket.close();
+                }
+            }
+        } catch (SocketTimeoutException e) {
+            close();
+            throw new IOException("Worker did not connect in " + CONNECT_TIMEOUT_MILLIS + " ms", e);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Construct {@link ProcessParallelMapper} attached to running workers
+     * <p>
+     * Workers are started by {@code ProcessMapperWorker --listen port}
+     * or {@code ProcessMapperWorker --listen-unix path}
+     *
+     * @param workers - TCP or Unix-domain socket addresses of workers
+     * @throws IOException if some worker could not be connected
+     */
+    public ProcessParallelMapper(final List<? extends SocketAddress> workers) throws IOException {
+        if (workers.isEmpty()) {
+            throw new IllegalArgumentException("No workers");
+        }
+        try {
+            for (final SocketAddress address : workers) {
+                final SocketChannel channel = SocketChannel.open(address);
+                startDispatcher(new Connection(
+                        channel, Channels.newInputStream(channel), Channels.newOutputStream(channel)));
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Return time left until deadline
+     *
+     * @param deadline - {@link System#nanoTime()} of deadline
+     * @return positive number of milliseconds left
+     * @throws SocketTimeoutException if deadline has passed
+     */
+    private static int remainingMillis(final long deadline) throws SocketTimeoutException {
+        final long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (remaining <= 0) {
+            throw new SocketTimeoutException();
+        }
+        return (int) remaining;
+    }
+
+    /**
+     * Read token from just accepted connection and compare it with expected one
+     *
+     * @param socket   - accepted connection
+     * @param token    - token of started workers
+     * @param deadline - {@link System#nanoTime()} of deadline
+     * @return {@code true} if connection sent expected token before deadline
+     */
+    private static boolean authenticate(final Socket socket, final byte[] token, final long deadline) {
+        try {
+            socket.setSoTimeout(remainingMillis(deadline));
+            final byte[] received = socket.getInputStream().readNBytes(token.length);
+            socket.setSoTimeout(0);
+            return MessageDigest.isEqual(token, received);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Build command starting worker process in the same way as current JVM was started
+     *
+     * @param jvmOptions - options of worker JVM
+     * @param port       - loopback port worker connects to
+     * @return worker command
+     */
+    private static List<String> workerCommand(final List<String> jvmOptions, final int port) {
+        final List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmOptions);
+        final String classPath = System.getProperty("java.class.path");
+        if (classPath != null && !classPath.isEmpty()) {
+            command.addAll(List.of("-cp", classPath));
+        }
+        final Module module = ProcessMapperWorker.class.getModule();
+        final String modulePath = System.getProperty("jdk.module.path");
+        if (module.isNamed() && modulePath != null) {
+            command.addAll(List.of(
+                    "-p", modulePath,
+                    "--add-modules", "ALL-MODULE-PATH",
+                    "-m", module.getName() + "/" + ProcessMapperWorker.class.getName()));
+        } else {
+            command.add(ProcessMapperWorker.class.getName());
+        }
+        command.addAll(List.of("--connect", Integer.toString(port)));
+        return command;
+    }
+
+    /**
+     * Connection to worker
+     *
+     * @param channel - underlying socket or channel
+     * @param in      - stream of replies
+     * @param out     - stream of requests
+     */
+    private record Connection(Closeable channel, DataInputStream in, DataOutputStream out) {
+        private Connection(final Closeable channel, final InputStream in, final OutputStream out) {
+            this(channel,
+                    new DataInputStream(new BufferedInputStream(in)),
+                    new DataOutputStream(new BufferedOutputStream(out)));
+        }
+
+        /**
+         * Send chunk and wait for reply
+         *
+         * @param request - serialized {@link ProcessMapperWorker.Chunk}
+         * @return serialized reply, results if {@code success} flag is set, otherwise throwable
+         * @throws IOException if worker died or connection was closed
+         */
+        private Reply exchange(final byte[] request) throws IOException {
+            ProcessMapperWorker.writeFrame(out, request);
+            out.flush();
+            final boolean success = in.readBoolean();
+            return new Reply(success, ProcessMapperWorker.readFrame(in));
+        }
+
+        /**
+         * Close connection, ignoring errors
+         */
+        private void close() {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+
+            }
+        }
+    }
+
+    /**
+     * Reply of worker
+     *
+     * @param success - whether function succeeded
+     * @param bytes   - serialized {@link List} of results or {@link Throwable}
+     */
+    private record Reply(boolean success, byte[] bytes) {
+    }
+
+    /**
+     * Chunk of single {@code map} call waiting for a worker
+     */
+    private static class ChunkTask {
+        /**
+         * Call the chunk belongs to
+         */
+        private final MappingCall call;
+
+        /**
+         * Index of the first value of the chunk
+         */
+        private final int from;
+
+        /**
+         * Serialized {@link ProcessMapperWorker.Chunk}
+         */
+        private final byte[] request;
+
+        /**
+         * Number of workers chunk was sent to
+         */
+        private int attempts;
+
+        /**
+         * Construct {@link ChunkTask}
+         *
+         * @param call    - call the chunk belongs to
+         * @param from    - index of the first value of the chunk
+         * @param request - serialized chunk
+         */
+        private ChunkTask(final MappingCall call, final int from, final byte[] request) {
+            this.call = call;
+            this.from = from;
+            this.request = request;
+        }
+    }
+
+    /**
+     * Results of single {@code map} call
+     * <p>
+     * Caller is notified once, when all chunks are done or the first failure happened
+     */
+    private static class MappingCall {
+
+        /**
+         * Array contains results
+         */
+        private final Object[] results;
+
+        /**
+         * Number of chunks not done yet
+         */
+        private int remainingChunks;
+
+        /**
+         * First failure or {@code null}
+         */
+        private Throwable failure;
+
+        /**
+         * Construct {@link MappingCall} with given size and number of chunks
+         *
+         * @param size   - number of values
+         * @param chunks - number of chunks
+         */
+        private MappingCall(final int size, final int chunks) {
+            results = new Object[size];
+            remainingChunks = chunks;
+        }
+
+        /**
+         * Return whether results are not needed anymore
+         *
+         * @return {@code true} if all chunks are done or call failed
+         */
+        private synchronized boolean isDone() {
+            return remainingChunks == 0 || failure != null;
+        }
+
+        /**
+         * Store results of chunk
+         *
+         * @param from   - index of the first value of the chunk
+         * @param values - results of the chunk
+         */
+        private synchronized void complete(final int from, final List<?> values) {
+            if (isDone()) {
+                return;
+            }
+            for (int i = 0; i < values.size(); ++i) {
+                results[from + i] = values.get(i);
+            }
+            if (--remainingChunks == 0) {
+                notify();
+            }
+        }
+
+        /**
+         * Fail the call, if it is not done yet
+         *
+         * @param throwable - cause of failure
+         */
+        private synchronized void fail(final Throwable throwable) {
+            if (!isDone()) {
+                failure = throwable;
+                notify();
+            }
+        }
+
+        /**
+         * Wait for all chunks, then return results
+         *
+         * @param <R> - type of results
+         * @return {@link List} of results
+         * @throws InterruptedException if thread was interrupted
+         */
+        @SuppressWarnings("unchecked")
+        private synchronized <R> List<R> getList() throws InterruptedException {
+            try {
+                while (!isDone()) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                failure = e;
+                throw e;
+            }
+            if (failure instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (failure instanceof Error error) {
+                throw error;
+            }
+            if (failure != null) {
+                throw new IllegalStateException(failure);
+            }
+            return (List<R>) Arrays.asList(results);
+        }
+    }
+
+    /**
+     * Start thread exchanging chunks with given worker
+     *
+     * @param connection - connection to worker
+     */
+    private void startDispatcher(final Connection connection) {
+        connections.add(connection);
+        liveWorkers.incrementAndGet();
+        final Thread thread = new Thread(() -> dispatch(connection));
+        dispatchers.add(thread);
+        thread.start();
+    }
+
+    /**
+     * Body of dispatcher thread: sending chunks to worker while it is alive and thread is not interrupted
+     *
+     * @param connection - connection to worker
+     */
+    private void dispatch(final Connection connection) {
+        ChunkTask task = null;
+        try {
+            while (!Thread.interrupted()) {
+                task = take();
+                if (task.call.isDone()) {
+                    task = null;
+                    continue;
+                }
+                task.attempts++;
+                final Reply reply = connection.exchange(task.request);
+                try {
+                    final Object value = ProcessMapperWorker.deserialize(reply.bytes());
+                    if (reply.success()) {
+                        task.call.complete(task.from, (List<?>) value);
+                    } else {
+                        task.call.fail((Throwable) value);
+                    }
+                } catch (ClassNotFoundException | IOException e) {
+                    task.call.fail(new IllegalStateException("Invalid reply of worker", e));
+                }
+                task = null;
+            }
+        } catch (InterruptedException ignored) {
+
+        } catch (IOException e) {
+            workerLost(connection, task, e);
+            return;
+        } finally {
+            dispatchers.remove(Thread.currentThread());
+        }
+        workerLost(connection, task, null);
+    }
+
+    /**
+     * Forget dead or stopped worker and retry its chunk on another one.
+     * When the last worker is lost, all waiting chunks fail
+     *
+     * @param connection - connection to the worker
+     * @param task       - chunk sent to the worker or {@code null}
+     * @param cause      - cause of loss or {@code null}
+     */
+    private void workerLost(final Connection connection, final ChunkTask task, final IOException cause) {
+        connection.close();
+        connections.remove(connection);
+        final boolean last = liveWorkers.decrementAndGet() == 0;
+        if (task != null) {
+            if (closed || last || task.attempts >= MAX_ATTEMPTS) {
+                task.call.fail(new IllegalStateException(
+                        "Chunk failed on " + task.attempts + " workers", cause));
+            } else {
+                synchronized (pending) {
+                    pending.addFirst(task);
+                    pending.notify();
+                }
+            }
+        }
+        if (last) {
+            failPending(closed ? "Mapper is closed" : "All workers are dead");
+        }
+    }
+
+    /**
+     * Fail all waiting chunks
+     *
+     * @param message - description of failure
+     */
+    private void failPending(final String message) {
+        synchronized (pending) {
+            for (final ChunkTask task : pending) {
+                task.call.fail(new IllegalStateException(message));
+            }
+            pending.clear();
+        }
+    }
+
+    /**
+     * Take waiting chunk, waiting for it if there are none
+     *
+     * @return chunk to send
+     * @throws InterruptedException if thread was interrupted
+     */
+    private ChunkTask take() throws InterruptedException {
+        synchronized (pending) {
+            while (pending.isEmpty()) {
+                pending.wait();
+            }
+            return pending.poll();
+        }
+    }
+
+    /**
+     * Maps function {@code function} over specified {@code list}.
+     * Contiguous chunks of values are mapped by worker processes in parallel.
+     *
+     * @throws InterruptedException     if calling thread was interrupted
+     * @throws IllegalArgumentException if function or values are not serializable or chunk is too large
+     * @throws IllegalStateException    if mapper is closed or chunk could not be mapped by any worker
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T, R> List<R> map(final Function<? super T, ? extends R> function,
+                              final List<? extends T> list) throws InterruptedException {
+        if (!(function instanceof Serializable)) {
+            throw new IllegalArgumentException("Function must be Serializable");
+        }
+        final int size = list.size();
+        if (size == 0) {
+            return List.of();
+        }
+        final int workers = liveWorkers.get();
+        if (closed || workers == 0) {
+            throw new IllegalStateException(closed ? "Mapper is closed" : "All workers are dead");
+        }
+        final int chunks = Math.min(size, workers * CHUNKS_PER_WORKER);
+        final MappingCall call = new MappingCall(size, chunks);
+        final List<ChunkTask> tasks = new ArrayList<>(chunks);
+        final int chunkSize = size / chunks;
+        final int remainder = size % chunks;
+        int left = 0;
+        for (int i = 0; i < chunks; ++i) {
+            final int from = left;
+            final int to = from + chunkSize + (i < remainder ? 1 : 0);
+            final ProcessMapperWorker.Chunk chunk = new ProcessMapperWorker.Chunk(
+                    (Function<Object, Object>) function, new ArrayList<>(list.subList(from, to)));
+            final byte[] request;
+            try {
+                request = ProcessMapperWorker.serialize(chunk);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Function or values are not serializable", e);
+            }
+            if (request.length > ProcessMapperWorker.MAX_FRAME_BYTES) {
+                throw new IllegalArgumentException("Chunk takes " + request.length + " bytes, at most "
+                        + ProcessMapperWorker.MAX_FRAME_BYTES + " expected");
+            }
+            tasks.add(new ChunkTask(call, from, request));
+            left = to;
+        }
+        synchronized (pending) {
+            pending.addAll(tasks);
+            pending.notifyAll();
+        }
+        if (liveWorkers.get() == 0) {
+            failPending("All workers are dead");
+        }
+        return call.getList();
+    }
+
+    /**
+     * Stops all dispatcher threads and worker processes started by this mapper.
+     * All unfinished mappings fail with {@link IllegalStateException}
+     */
+    @Override
+    public void close() {
+        closed = true;
+        dispatchers.forEach(Thread::interrupt);
+        connections.forEach(Connection::close);
+        for (final Thread thread : dispatchers) {
+            try {
+                thread.join();
+            } catch (InterruptedException ignored) {
+
+            }
+        }
+        failPending("Mapper is closed");
+        for (final Process process : processes) {
+            process.destroy();
+            try {
+                if (!process.waitFor(1, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (InterruptedException ignored) {
+                process.destroyForcibly();
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package info.kgeorgiy.ja.osipov.concurrent;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Scope of subtasks of a single call, each subtask runs in its own virtual thread
+ * <p>
+ * Subtasks never outlive the call: the first failure interrupts all siblings,
+ * interruption of the caller interrupts all subtasks, and in both cases the caller
+ * returns only after all subtask threads are finished
+ *
+ * @param <R> type of subtask results
+ * @author Osipov Daniil
+ */
+final class StructuredScope<R> {
+
+    /**
+     * Subtask threads in order of subtasks
+     */
+    private final Thread[] threads;
+
+    /**
+     * Subtask results in order of subtasks
+     */
+    private final Object[] results;
+
+    /**
+     * The first failure of a subtask or {@code null}
+     */
+    private Throwable failure;
+
+    /**
+     * Construct {@link StructuredScope} for given number of subtasks
+     *
+     * @param size number of subtasks
+     */
+    private StructuredScope(final int size) {
+        threads = new Thread[size];
+        results = new Object[size];
+    }
+
+    /**
+     * Apply given {@code function} to each of given {@code parts}, each in separate virtual thread
+     *
+     * @param parts    parts to apply {@code function} to
+     * @param function {@link Function} applying to each part
+     * @param <P>      part type
+     * @param <R>      value type of {@code function}
+     * @return {@link List} of {@code function} results in order of parts
+     * @throws InterruptedException if calling thread was interrupted, all subtasks are finished then
+     */
+    static <P, R> List<R> run(final List<P> parts,
+                              final Function<? super P, ? extends R> function) throws InterruptedException {
+        final StructuredScope<R> scope = new StructuredScope<>(parts.size());
+        for (int i = 0; i < parts.size(); ++i) {
+            final int index = i;
+            scope.threads[i] = Thread.ofVirtual().unstarted(() -> scope.runSubtask(index, function, parts.get(index)));
+        }
+        for (final Thread thread : scope.threads) {
+            thread.start();
+        }
+        return scope.join();
+    }
+
+    /**
+     * Body of subtask thread
+     *
+     * @param index    index of subtask
+     * @param function function to apply
+     * @param part     part to apply function to
+     * @param <P>      part type
+     */
+    private <P> void runSubtask(final int index, final Function<? super P, ? extends R> function, final P part) {
+        try {
+            results[index] = function.apply(part);
+        } catch (Throwable e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Record the first failure and interrupt all subtasks
+     *
+     * @param throwable cause of failure
+     */
+    private void fail(final Throwable throwable) {
+        synchronized (this) {
+            if (failure != null) {
+                return;
+            }
+            failure = throwable;
+        }
+        cancel();
+    }
+
+    /**
+     * Interrupt all subtask threads
+     */
+    private void cancel() {
+        for (final Thread thread : threads) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * Wait for all subtasks, then return results or rethrow the first failure
+     *
+     * @return {@link List} of results in order of subtasks
+     * @throws InterruptedException if calling thread was interrupted
+     */
+    @SuppressWarnings("unchecked")
+    private List<R> join() throws InterruptedException {
+        for (final Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                cancel();
+                joinUninterruptibly();
+                throw e;
+            }
+        }
+        final Throwable first;
+        synchronized (this) {
+            first = failure;
+        }
+        if (first instanceof RuntimeException runtimeException) {
+            throw runtimeException;
+        }
+        if (first instanceof Error error) {
+            throw error;
+        }
+        if (first != null) {
+            throw new IllegalStateException(first);
+        }
+        return (List<R>) Arrays.asList(results);
+    }
+
+    /**
+     * Wait for all subtask threads ignoring interruptions, then restore interrupted status
+     */
+    private void joinUninterruptibly() {
+        boolean interrupted = false;
+        for (final Thread thread : threads) {
+            while (true) {
+                try {
+                    thread.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
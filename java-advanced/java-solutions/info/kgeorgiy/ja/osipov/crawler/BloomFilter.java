@@ -0,0 +1,63 @@
+package info.kgeorgiy.ja.osipov.crawler;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Approximate {@link VisitedSet} of fixed size
+ * <p>
+ * New fingerprint is reported as already added with given false positive probability,
+ * once the filter holds expected number of fingerprints. Bits are set without locking,
+ * concurrent additions of the same fingerprint are serialized by striped locks
+ *
+ * @author Osipov Daniil
+ */
+class BloomFilter implements VisitedSet {
+
+    private static final int LOCKS = 64;
+
+    private final AtomicLongArray words;
+    private final long bits;
+    private final int hashes;
+    private final Object[] locks = new Object[LOCKS];
+
+    /**
+     * Construct empty filter of optimal size
+     *
+     * @param expected                 positive expected number of fingerprints
+     * @param falsePositiveProbability probability of false positive at expected number of fingerprints, in (0, 1)
+     */
+    BloomFilter(final long expected, final double falsePositiveProbability) {
+        final double optimal = -expected * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2));
+        final long wordCount = Math.min(Integer.MAX_VALUE - 8, Math.max(1, (long) Math.ceil(optimal / Long.SIZE)));
+        this.words = new AtomicLongArray((int) wordCount);
+        this.bits = wordCount * Long.SIZE;
+        this.hashes = Math.max(1, (int) Math.round((double) bits / expected * Math.log(2)));
+        for (int i = 0; i < LOCKS; ++i) {
+            locks[i] = new Object();
+        }
+    }
+
+    @Override
+    public boolean add(final long fingerprint) {
+        // double hashing of Kirsch and Mitzenmacher
+        final long first = fingerprint;
+        final long second = Long.rotateLeft(fingerprint, 32) | 1;
+        synchronized (locks[(int) (fingerprint >>> 58)]) {
+            boolean added = false;
+            for (int i = 0; i < hashes; ++i) {
+                final long bit = Math.floorMod(first + i * second, bits);
+                final int index = (int) (bit >>> 6);
+                final long mask = 1L << bit;
+                long word = words.get(index);
+                while ((word & mask) == 0) {
+                    if (words.compareAndSet(index, word, word | mask)) {
+                        added = true;
+                        break;
+                    }
+                    word = words.get(index);
+                }
+            }
+            return added;
+        }
+    }
+}
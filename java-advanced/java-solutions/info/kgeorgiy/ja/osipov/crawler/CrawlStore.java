@@ -0,0 +1,249 @@
+package info.kgeorgiy.ja.osipov.crawler;
+
+import info.kgeorgiy.java.advanced.crawler.Result;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Disk-backed state of resumable crawl
+ * <p>
+ * Frontier of each depth is an append-only {@link SegmentLog} {@code frontier-<depth>}: every page is written
+ * once, to the log of the first depth it was found at. Downloaded pages and errors are appended to log
+ * {@code results}. Checkpoint file stores current depth and number of its frontier entries that are fully
+ * processed, all logs are synced before checkpoint is written. Visited pages are kept in memory only in
+ * {@link VisitedSet} and are restored from frontier logs when crawl is resumed
+ *
+ * @author Osipov Daniil
+ */
+class CrawlStore implements Closeable {
+
+    private static final String CHECKPOINT = "checkpoint";
+    private static final String RESULTS = "results";
+
+    private final Path dir;
+    private final String url;
+    private final int depth;
+    private final VisitedSet visited;
+    private final SegmentLog results;
+    private int level;
+    private long position;
+    private boolean done;
+    private SegmentLog nextFrontier;
+
+    private CrawlStore(final Path dir, final String url, final int depth, final VisitedSet visited) throws IOException {
+        this.dir = dir;
+        this.url = url;
+        this.depth = depth;
+        this.visited = visited;
+        this.results = new SegmentLog(dir, RESULTS);
+    }
+
+    /**
+     * Open state of crawl in given directory, resuming it from the last checkpoint if there is one
+     *
+     * @param dir     state directory
+     * @param url     start page
+     * @param depth   download depth
+     * @param visited empty set of visited pages
+     * @return opened state
+     * @throws IOException           if state could not be read or written
+     * @throws IllegalStateException if directory contains state of crawl with another start page or depth
+     */
+    static CrawlStore open(final Path dir, final String url, final int depth, final VisitedSet visited)
+            throws IOException {
+        Files.createDirectories(dir);
+        final Path checkpointPath = dir.resolve(CHECKPOINT);
+        final CrawlStore store;
+        if (Files.exists(checkpointPath)) {
+            final Properties checkpoint = new Properties();
+            try (final Reader reader = Files.newBufferedReader(checkpointPath, StandardCharsets.UTF_8)) {
+                checkpoint.load(reader);
+            }
+            if (!url.equals(checkpoint.getProperty("url"))
+                    || depth != Integer.parseInt(checkpoint.getProperty("depth"))) {
+                throw new IllegalStateException("State directory " + dir + " belongs to crawl of "
+                        + checkpoint.getProperty("url") + " with depth " + checkpoint.getProperty("depth"));
+            }
+            store = new CrawlStore(dir, url, depth, visited);
+            store.level = Integer.parseInt(checkpoint.getProperty("level"));
+            store.position = Long.parseLong(checkpoint.getProperty("position"));
+            store.done = Boolean.parseBoolean(checkpoint.getProperty("done"));
+            for (int i = 1; i <= store.level + 1; ++i) {
+                try (final SegmentLog.LineReader reader = SegmentLog.read(dir, frontierName(i), 0)) {
+                    reader.forEachRemaining(page -> store.visited.add(VisitedSet.fingerprint(page)));
+                }
+            }
+        } else {
+            store = new CrawlStore(dir, url, depth, visited);
+            store.level = 1;
+            try (final SegmentLog first = new SegmentLog(dir, frontierName(1))) {
+                first.append(url);
+                first.sync();
+            }
+            store.visited.add(VisitedSet.fingerprint(url));
+        }
+        store.nextFrontier = new SegmentLog(dir, frontierName(store.level + 1));
+        store.writeCheckpoint();
+        return store;
+    }
+
+    private static String frontierName(final int level) {
+        return "frontier-" + level;
+    }
+
+    /**
+     * Return current depth
+     *
+     * @return depth of frontier being processed, starting from {@code 1}
+     */
+    synchronized int level() {
+        return level;
+    }
+
+    /**
+     * Return number of fully processed frontier entries of current depth at the last checkpoint
+     *
+     * @return position in frontier of current depth
+     */
+    synchronized long position() {
+        return position;
+    }
+
+    /**
+     * Return whether crawl is finished
+     *
+     * @return {@code true} if all depths are processed
+     */
+    synchronized boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Read frontier of current depth starting from checkpoint position
+     *
+     * @return lazy reader of pages
+     * @throws IOException if frontier could not be read
+     */
+    synchronized SegmentLog.LineReader frontier() throws IOException {
+        return SegmentLog.read(dir, frontierName(level), position);
+    }
+
+    /**
+     * Add page found on current depth to frontier of the next depth, if it was not visited
+     *
+     * @param page page URL
+     * @throws IOException if frontier could not be written
+     */
+    void discover(final String page) throws IOException {
+        if (visited.add(VisitedSet.fingerprint(page))) {
+            nextFrontier.append(page);
+        }
+    }
+
+    /**
+     * Record downloaded page
+     *
+     * @param page page URL
+     * @throws IOException if results could not be written
+     */
+    void downloaded(final String page) throws IOException {
+        results.append("+" + page);
+    }
+
+    /**
+     * Record error of page
+     *
+     * @param page      page URL
+     * @param exception error
+     * @throws IOException if results could not be written
+     */
+    void failed(final String page, final IOException exception) throws IOException {
+        results.append("-" + page + "\t" + String.valueOf(exception.getMessage()).replaceAll("[\r\n\t]", " "));
+    }
+
+    /**
+     * Sync logs and record that given number of frontier entries of current depth are fully processed
+     *
+     * @param processed number of processed entries
+     * @throws IOException if checkpoint could not be written
+     */
+    synchronized void checkpoint(final long processed) throws IOException {
+        position = processed;
+        writeCheckpoint();
+    }
+
+    /**
+     * Move to the next depth, or finish crawl if it is the last depth or next frontier is empty
+     *
+     * @throws IOException if checkpoint could not be written
+     */
+    synchronized void advance() throws IOException {
+        nextFrontier.sync();
+        nextFrontier.close();
+        if (level >= depth || SegmentLog.isEmpty(dir, frontierName(level + 1))) {
+            done = true;
+        } else {
+            level++;
+            position = 0;
+            nextFrontier = new SegmentLog(dir, frontierName(level + 1));
+        }
+        writeCheckpoint();
+    }
+
+    private void writeCheckpoint() throws IOException {
+        results.sync();
+        if (nextFrontier != null && !done) {
+            nextFrontier.sync();
+        }
+        final Properties checkpoint = new Properties();
+        checkpoint.setProperty("url", url);
+        checkpoint.setProperty("depth", Integer.toString(depth));
+        checkpoint.setProperty("level", Integer.toString(level));
+        checkpoint.setProperty("position", Long.toString(position));
+        checkpoint.setProperty("done", Boolean.toString(done));
+        final Path temporary = dir.resolve(CHECKPOINT + ".tmp");
+        try (final Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            checkpoint.store(writer, null);
+        }
+        Files.move(temporary, dir.resolve(CHECKPOINT),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Build result from results log. Page downloaded several times because of resume is listed once,
+     * errors restored from log are {@link IOException} with original message
+     *
+     * @param errors errors of current run, preferred to restored ones
+     * @return crawl result
+     * @throws IOException if results could not be read
+     */
+    Result result(final Map<String, IOException> errors) throws IOException {
+        results.sync();
+        final Set<String> downloaded = new LinkedHashSet<>();
+        final Map<String, IOException> exceptions = new HashMap<>();
+        try (final SegmentLog.LineReader reader = SegmentLog.read(dir, RESULTS, 0)) {
+            reader.forEachRemaining(line -> {
+                if (line.startsWith("+")) {
+                    downloaded.add(line.substring(1));
+                } else if (line.startsWith("-")) {
+                    final int tab = line.indexOf('\t');
+                    final String page = line.substring(1, tab);
+                    exceptions.put(page, errors.getOrDefault(page, new IOException(line.substring(tab + 1))));
+                }
+            });
+        }
+        exceptions.keySet().removeAll(downloaded);
+        return new Result(new ArrayList<>(downloaded), exceptions);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        results.close();
+        nextFrontier.close();
+    }
+}
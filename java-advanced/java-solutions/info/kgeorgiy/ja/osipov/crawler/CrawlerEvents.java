@@ -0,0 +1,104 @@
+package info.kgeorgiy.ja.osipov.crawler;
+
+import jdk.jfr.*;
+
+/**
+ * JFR events of {@link WebCrawler}
+ * <p>
+ * Events are committed only while recording is on, otherwise they cost next to nothing.
+ * Queue events are periodic, they are sampled only when recording asks for them
+ *
+ * @author Osipov Daniil
+ */
+final class CrawlerEvents {
+
+    /**
+     * Utility class
+     */
+    private CrawlerEvents() {
+    }
+
+    /**
+     * Download of single page, from taking downloader to getting document
+     */
+    @Name("info.kgeorgiy.ja.osipov.crawler.Download")
+    @Label("Page Download")
+    @Category("WebCrawler")
+    @StackTrace(false)
+    static class Download extends Event {
+        @Label("URL")
+        String url;
+
+        @Label("Host")
+        String host;
+
+        @Label("Size")
+        @Description("Size of downloaded page, -1 if downloader does not report it")
+        @DataAmount
+        long size = -1;
+
+        @Label("Error")
+        @Description("Class of exception if download failed")
+        String error;
+    }
+
+    /**
+     * Extraction of links from single page
+     */
+    @Name("info.kgeorgiy.ja.osipov.crawler.Extract")
+    @Label("Links Extraction")
+    @Category("WebCrawler")
+    @StackTrace(false)
+    static class Extract extends Event {
+        @Label("URL")
+        String url;
+
+        @Label("Links")
+        int links;
+
+        @Label("Error")
+        @Description("Class of exception if extraction failed")
+        String error;
+    }
+
+    /**
+     * Depths of downloader and extractor queues
+     */
+    @Name("info.kgeorgiy.ja.osipov.crawler.Queues")
+    @Label("Crawler Queues")
+    @Category("WebCrawler")
+    @StackTrace(false)
+    @Period("1 s")
+    static class Queues extends Event {
+        @Label("Download Queue")
+        @Description("Downloads waiting for downloader")
+        int downloadQueue;
+
+        @Label("Extract Queue")
+        @Description("Pages waiting for extractor")
+        int extractQueue;
+    }
+
+    /**
+     * Queue length and downloads in flight of single host
+     */
+    @Name("info.kgeorgiy.ja.osipov.crawler.HostQueue")
+    @Label("Host Queue")
+    @Category("WebCrawler")
+    @StackTrace(false)
+    @Period("1 s")
+    static class HostQueue extends Event {
+        @Label("Host")
+        String host;
+
+        @Label("Queued")
+        @Description("Downloads waiting for limit of the host")
+        int queued;
+
+        @Label("In Flight")
+        int inFlight;
+
+        @Label("Concurrency Limit")
+        int limit;
+    }
+}
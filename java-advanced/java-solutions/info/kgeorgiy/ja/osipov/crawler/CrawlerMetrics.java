@@ -0,0 +1,242 @@
+package info.kgeorgiy.ja.osipov.crawler;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Operational metrics of {@link WebCrawler}
+ * <p>
+ * Collection is disabled by default. While disabled, {@link #now()} returns {@code 0}
+ * and all recording methods return immediately, so the only cost is a volatile read.
+ * Queue depths are read only when {@link #snapshot()} is taken
+ *
+ * @author Osipov Daniil
+ */
+public class CrawlerMetrics {
+
+    /**
+     * Number of latency histogram buckets, one for each power of two nanoseconds
+     */
+    private static final int BUCKETS = Long.SIZE;
+
+    /**
+     * Minimal length of interval rates of {@link #snapshot()} are measured over
+     */
+    private static final long RATE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Whether metrics are collected
+     */
+    private volatile boolean enabled;
+
+    private final IntSupplier downloadQueue;
+    private final IntSupplier extractQueue;
+    private final Supplier<Map<String, WebCrawler.HostStatistics>> hosts;
+
+    private final LongAdder pages = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final AtomicLongArray downloadLatency = new AtomicLongArray(BUCKETS);
+    private final AtomicLongArray extractLatency = new AtomicLongArray(BUCKETS);
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    /**
+     * Time, pages and bytes at the start of the last rate interval, guarded by this
+     */
+    private long previousRateTime = System.nanoTime();
+    private long previousRatePages;
+    private long previousRateBytes;
+    /**
+     * Time, pages and bytes at the end of the last rate interval, guarded by this
+     */
+    private long lastRateTime = previousRateTime;
+    private long lastRatePages;
+    private long lastRateBytes;
+
+    /**
+     * Snapshot of crawler metrics
+     *
+     * @param pages number of downloaded pages
+     * @param bytes total size of downloaded pages reported by {@link SizedDocument}
+     * @param pagesPerSecond download rate over the last interval of at least one second
+     * @param bytesPerSecond download rate in bytes over the last interval of at least one second
+     * @param downloadQueue number of downloads waiting for downloader
+     * @param extractQueue number of pages waiting for extractor
+     * @param downloadLatencyHistogram bucket {@code i} counts downloads
+     *                                 with latency in {@code [2^i, 2^(i+1))} nanoseconds
+     * @param extractLatencyHistogram bucket {@code i} counts extractions
+     *                                with latency in {@code [2^i, 2^(i+1))} nanoseconds
+     * @param errors number of errors by exception class name
+     * @param hosts queues and statistics by host
+     */
+    public record Snapshot(long pages,
+                           long bytes,
+                           double pagesPerSecond,
+                           double bytesPerSecond,
+                           int downloadQueue,
+                           int extractQueue,
+                           long[] downloadLatencyHistogram,
+                           long[] extractLatencyHistogram,
+                           Map<String, Long> errors,
+                           Map<String, WebCrawler.HostStatistics> hosts) {
+    }
+
+    /**
+     * Construct disabled {@link CrawlerMetrics}
+     *
+     * @param downloadQueue supplier of number of downloads waiting for downloader
+     * @param extractQueue supplier of number of pages waiting for extractor
+     * @param hosts supplier of statistics by host
+     */
+    CrawlerMetrics(final IntSupplier downloadQueue,
+                   final IntSupplier extractQueue,
+                   final Supplier<Map<String, WebCrawler.HostStatistics>> hosts) {
+        this.downloadQueue = downloadQueue;
+        this.extractQueue = extractQueue;
+        this.hosts = hosts;
+    }
+
+    /**
+     * Return whether metrics are collected
+     *
+     * @return {@code true} if metrics are collected
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enable or disable metrics collection
+     *
+     * @param enabled {@code true} to collect metrics
+     */
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Return current time for measuring intervals
+     *
+     * @return {@link System#nanoTime()} if metrics are enabled, else {@code 0}
+     */
+    long now() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Record finished download
+     *
+     * @param latencyNanos time of download
+     * @param size size of page or {@code -1} if it is unknown or download failed
+     * @param exception error of download or {@code null}
+     */
+    void downloaded(final long latencyNanos, final long size, final Exception exception) {
+        if (!enabled) {
+            return;
+        }
+        record(downloadLatency, latencyNanos);
+        if (exception != null) {
+            failed(exception);
+            return;
+        }
+        pages.increment();
+        if (size > 0) {
+            bytes.add(size);
+        }
+    }
+
+    /**
+     * Record finished links extraction
+     *
+     * @param start {@link #now()} before extraction
+     */
+    void extracted(final long start) {
+        if (start != 0 && enabled) {
+            record(extractLatency, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Record error
+     *
+     * @param exception error
+     */
+    void failed(final Exception exception) {
+        if (enabled) {
+            errors.computeIfAbsent(exception.getClass().getName(), name -> new LongAdder()).increment();
+        }
+    }
+
+    private static void record(final AtomicLongArray histogram, final long latency) {
+        histogram.incrementAndGet(latency > 0 ? BUCKETS - 1 - Long.numberOfLeadingZeros(latency) : 0);
+    }
+
+    private static long[] toArray(final AtomicLongArray histogram) {
+        final long[] result = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; ++i) {
+            result[i] = histogram.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Return number of downloads waiting for downloader
+     *
+     * @return current download queue depth
+     */
+    int downloadQueue() {
+        return downloadQueue.getAsInt();
+    }
+
+    /**
+     * Return number of pages waiting for extractor
+     *
+     * @return current extract queue depth
+     */
+    int extractQueue() {
+        return extractQueue.getAsInt();
+    }
+
+    /**
+     * Take snapshot of metrics. Rates are measured over the last interval of at least one second,
+     * which ends at the first snapshot after the previous interval is over, so callers do not
+     * shorten intervals of each other
+     *
+     * @return snapshot
+     */
+    public synchronized Snapshot snapshot() {
+        final long time = System.nanoTime();
+        final long pageCount = pages.sum();
+        final long byteCount = bytes.sum();
+        if (time - lastRateTime >= RATE_INTERVAL_NANOS) {
+            previousRateTime = lastRateTime;
+            previousRatePages = lastRatePages;
+            previousRateBytes = lastRateBytes;
+            lastRateTime = time;
+            lastRatePages = pageCount;
+            lastRateBytes = byteCount;
+        }
+        final double seconds = (lastRateTime - previousRateTime) / 1e9;
+        final double pagesPerSecond = seconds == 0 ? 0 : (lastRatePages - previousRatePages) / seconds;
+        final double bytesPerSecond = seconds == 0 ? 0 : (lastRateBytes - previousRateBytes) / seconds;
+        final Map<String, Long> errorCounts = new TreeMap<>();
+        errors.forEach((name, count) -> errorCounts.put(name, count.sum()));
+        return new Snapshot(
+                pageCount,
+                byteCount,
+                pagesPerSecond,
+                bytesPerSecond,
+                downloadQueue(),
+                extractQueue(),
+                toArray(downloadLatency),
+                toArray(extractLatency),
+                errorCounts,
+                hosts.get()
+        );
+    }
+}
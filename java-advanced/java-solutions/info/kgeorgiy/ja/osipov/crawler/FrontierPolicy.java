@@ -0,0 +1,50 @@
+package info.kgeorgiy.ja.osipov.crawler;
+
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Order in which {@link WebCrawler} downloads discovered pages
+ * <p>
+ * Priority of page is computed once, when page is queued for download. Pages with smaller priority
+ * are downloaded first, pages with equal priority are downloaded in order they were queued
+ *
+ * @author Osipov Daniil
+ */
+@FunctionalInterface
+public interface FrontierPolicy {
+
+    /**
+     * Pages are downloaded in order they were discovered
+     */
+    FrontierPolicy FIFO = (url, depth, hostPages) -> 0;
+
+    /**
+     * Pages reached by shorter path are downloaded first
+     */
+    FrontierPolicy DEPTH = (url, depth, hostPages) -> depth;
+
+    /**
+     * Pages of hosts with fewer queued pages are downloaded first, so budget is spread over hosts
+     */
+    FrontierPolicy HOST_DIVERSITY = (url, depth, hostPages) -> hostPages;
+
+    /**
+     * Return policy downloading pages with higher score first
+     *
+     * @param score score of page URL
+     * @return policy
+     */
+    static FrontierPolicy score(final ToDoubleFunction<String> score) {
+        return (url, depth, hostPages) -> -score.applyAsDouble(url);
+    }
+
+    /**
+     * Return priority of page
+     *
+     * @param url       page URL
+     * @param depth     depth page was reached at, starting from {@code 1}
+     * @param hostPages number of pages of the same host queued before this page by the same crawl
+     * @return priority, smaller is downloaded earlier
+     */
+    double priority(String url, int depth, int hostPages);
+}
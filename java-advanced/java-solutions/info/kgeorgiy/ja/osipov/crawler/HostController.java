@@ -0,0 +1,158 @@
+package info.kgeorgiy.ja.osipov.crawler;
+
+import java.time.Duration;
+
+/**
+ * Adaptive concurrency limit and download statistics of single host
+ * <p>
+ * Limit is controlled by additive increase, multiplicative decrease. It starts at {@code 1} and grows by
+ * {@code 1} per healthy download until the first decrease, then by {@code 1 / limit}, so by {@code 1} per
+ * round of {@code limit} downloads. Limit is halved when download fails or takes more than
+ * {@link #SLOW_FACTOR} smoothed latencies, at most once per round: downloads started before previous decrease
+ * do not decrease it again. Limit never exceeds {@code perHost}
+ * <p>
+ * Rate of downloads may be limited by {@link TokenBucket}
+ *
+ * @author Osipov Daniil
+ */
+class HostController {
+
+    /**
+     * Ratio of latency to smoothed latency that is treated as timeout
+     */
+    private static final int SLOW_FACTOR = 3;
+    /**
+     * Weight of new latency in smoothed latency is {@code 1 / 2^SMOOTHING_SHIFT}
+     */
+    private static final int SMOOTHING_SHIFT = 3;
+
+    private final int perHost;
+    private double limit = 1;
+    private boolean slowStart = true;
+    /**
+     * Number of decreases of limit
+     */
+    private long epoch;
+    private long downloads;
+    private long errors;
+    private long totalLatencyNanos;
+    private long smoothedLatencyNanos;
+    private TokenBucket bucket;
+    /**
+     * Number of downloads waiting for limit of the host
+     */
+    private int queued;
+    private int inFlight;
+
+    /**
+     * Construct controller of new host
+     *
+     * @param perHost maximal limit
+     */
+    HostController(final int perHost) {
+        this.perHost = perHost;
+    }
+
+    /**
+     * Return current limit of parallel downloads
+     *
+     * @param adaptive whether limit is adaptive, otherwise it is {@code perHost}
+     * @return limit
+     */
+    synchronized int limit(final boolean adaptive) {
+        return adaptive ? (int) limit : perHost;
+    }
+
+    /**
+     * Set rate limit of the host
+     *
+     * @param bucket token bucket or {@code null} if rate is not limited
+     */
+    synchronized void setRateLimit(final TokenBucket bucket) {
+        this.bucket = bucket;
+    }
+
+    /**
+     * Take permit to start download according to rate limit
+     *
+     * @return {@code 0} if download may start, otherwise time in nanoseconds to wait before trying again
+     */
+    long tryAcquirePermit() {
+        final TokenBucket current;
+        synchronized (this) {
+            current = bucket;
+        }
+        return current == null ? 0 : current.tryAcquire();
+    }
+
+    /**
+     * Register download waiting for limit of the host
+     */
+    synchronized void enqueued() {
+        queued++;
+    }
+
+    /**
+     * Register download leaving queue of the host
+     */
+    synchronized void dequeued() {
+        queued--;
+    }
+
+    /**
+     * Register start of download
+     *
+     * @return token to pass to {@link #finished}
+     */
+    synchronized long started() {
+        inFlight++;
+        return epoch;
+    }
+
+    /**
+     * Register finished download and adjust limit
+     *
+     * @param token       token returned by {@link #started}
+     * @param latencyNanos time of download
+     * @param failed      whether download failed
+     */
+    synchronized void finished(final long token, final long latencyNanos, final boolean failed) {
+        inFlight--;
+        downloads++;
+        totalLatencyNanos += latencyNanos;
+        if (failed) {
+            errors++;
+        }
+        final boolean slow = smoothedLatencyNanos > 0 && latencyNanos > SLOW_FACTOR * smoothedLatencyNanos;
+        smoothedLatencyNanos = smoothedLatencyNanos == 0
+                ? latencyNanos
+                : smoothedLatencyNanos + ((latencyNanos - smoothedLatencyNanos) >> SMOOTHING_SHIFT);
+        if (failed || slow) {
+            if (token == epoch) {
+                epoch++;
+                slowStart = false;
+                limit = Math.max(1, limit / 2);
+            }
+        } else {
+            limit = Math.min(perHost, limit + (slowStart ? 1 : 1 / limit));
+        }
+    }
+
+    /**
+     * Return snapshot of statistics
+     *
+     * @param adaptive whether limit is adaptive
+     * @return statistics
+     */
+    synchronized WebCrawler.HostStatistics statistics(final boolean adaptive) {
+        return new WebCrawler.HostStatistics(
+                limit(adaptive),
+                downloads,
+                errors,
+                Duration.ofNanos(downloads == 0 ? 0 : totalLatencyNanos / downloads),
+                Duration.ofNanos(smoothedLatencyNanos),
+                queued,
+                inFlight
+        );
+    }
+}
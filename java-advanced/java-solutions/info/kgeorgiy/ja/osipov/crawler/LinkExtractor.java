@@ -0,0 +1,34 @@
+package info.kgeorgiy.ja.osipov.crawler;
+
+import info.kgeorgiy.java.advanced.crawler.URLUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.List;
+
+/**
+ * Extractor of links from HTML documents
+ *
+ * @author Osipov Daniil
+ */
+@FunctionalInterface
+public interface LinkExtractor {
+
+    /**
+     * Extractor building full DOM by {@link URLUtils#extractLinks}
+     */
+    LinkExtractor JSOUP = URLUtils::extractLinks;
+
+    /**
+     * Extract links from HTML document: absolute {@code http} and {@code https} URLs of {@code href}
+     * attributes of {@code a} tags, resolved against document URL, normalized and without fragments,
+     * in document order
+     *
+     * @param url URL of document
+     * @param is  document stream
+     * @return links
+     * @throws IOException if document could not be read
+     */
+    List<String> extractLinks(URI url, InputStream is) throws IOException;
+}
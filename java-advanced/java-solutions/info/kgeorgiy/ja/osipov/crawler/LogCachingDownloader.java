@@ -0,0 +1,615 @@
+package info.kgeorgiy.ja.osipov.crawler;
+
+import info.kgeorgiy.java.advanced.crawler.Document;
+import info.kgeorgiy.java.advanced.crawler.Downloader;
+import info.kgeorgiy.java.advanced.crawler.URLUtils;
+
+import java.io.*;
+import java.net.URI;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Downloads documents from the Web and stores them in append-only segment files of storage directory.
+ * <p>
+ * Each document is a record {@code [int length][int key length][key][marker][long load time][data]},
+ * where key is URI of document and the part from marker is the file format of
+ * {@link info.kgeorgiy.java.advanced.crawler.CachingDownloader}: {@code +} and page or {@code -} and
+ * serialized exception. Segment is closed when it exceeds {@link #SEGMENT_BYTES}.
+ * <p>
+ * Records are found by memory-mapped open-addressing index of 24-byte slots
+ * {@code [long fingerprint][long segment and offset][int length][int marker]}, so cache hit costs
+ * one positional read of the record head. Index remembers the last indexed position,
+ * records written after it, for example before crash, are indexed when storage is opened.
+ * Removed and duplicate records are dropped by {@link #compact}.
+ * <p>
+ * Links are extracted by {@link StreamingLinkExtractor} unless another {@link LinkExtractor} is given
+ *
+ * @author Osipov Daniil
+ */
+public class LogCachingDownloader implements Downloader, Closeable {
+
+    /**
+     * Size of segment after which new segment is started
+     */
+    static final long SEGMENT_BYTES = 256 << 20;
+
+    private static final byte OK_MARKER = '+';
+    private static final byte FAIL_MARKER = '-';
+    /**
+     * Marker of record removing previous record of the key
+     */
+    private static final byte REMOVED_MARKER = 'x';
+    private static final int READ_TIMEOUT = 30_000;
+
+    private static final String INDEX = "index";
+    private static final Pattern SEGMENT = Pattern.compile("segment-(\\d+)\\.log");
+    private static final long INDEX_MAGIC = 0x4c4f47494e444558L;
+    /**
+     * Index header: magic, number of slots, number of records, segment and offset of the last indexed position
+     */
+    private static final int INDEX_HEADER = 32;
+    private static final int SLOT = 24;
+    private static final int INITIAL_SLOTS = 1 << 12;
+    /**
+     * Value stored instead of fingerprint {@code 0}, which marks empty slot
+     */
+    private static final long ZERO = 0x9e3779b97f4a7c15L;
+    private static final int OFFSET_BITS = 40;
+    /**
+     * Bytes of record before data: length, key length, marker and load time, without key
+     */
+    private static final int HEAD = Integer.BYTES + Integer.BYTES + 1 + Long.BYTES;
+
+    private final double timeScale;
+    private final Path directory;
+    private final LinkExtractor extractor;
+    /**
+     * Guards segments and index: lookups and reads take read lock, appends and compaction take write lock
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final NavigableMap<Integer, FileChannel> segments = new TreeMap<>();
+    private long activeSize;
+    private FileChannel indexChannel;
+    private MappedByteBuffer index;
+    private int slots;
+    private int count;
+
+    /**
+     * Creates a new downloader storing documents in temporary directory.
+     *
+     * @param timeScale loading times simulation scale.
+     * @throws IOException if an error occurred.
+     */
+    public LogCachingDownloader(final double timeScale) throws IOException {
+        this(timeScale, Files.createTempDirectory(LogCachingDownloader.class.getName()));
+    }
+
+    /**
+     * Creates a new downloader storing documents in specified directory.
+     * Documents already stored in directory are reused
+     *
+     * @param timeScale loading times simulation scale.
+     * @param directory storage directory.
+     * @throws IOException if an error occurred.
+     */
+    public LogCachingDownloader(final double timeScale, final Path directory) throws IOException {
+        this(timeScale, directory, new StreamingLinkExtractor());
+    }
+
+    /**
+     * Creates a new downloader storing documents in specified directory and extracting links by given extractor.
+     * Documents already stored in directory are reused
+     *
+     * @param timeScale loading times simulation scale.
+     * @param directory storage directory.
+     * @param extractor extractor of links of documents.
+     * @throws IOException if an error occurred.
+     */
+    public LogCachingDownloader(final double timeScale, final Path directory, final LinkExtractor extractor)
+            throws IOException {
+        this.timeScale = timeScale;
+        this.directory = directory;
+        this.extractor = extractor;
+        if (!Files.exists(directory)) {
+            Files.createDirectories(directory);
+        }
+        if (!Files.isDirectory(directory)) {
+            throw new IOException(directory + " is not a directory");
+        }
+        try (final DirectoryStream<Path> files = Files.newDirectoryStream(directory, "segment-*.log")) {
+            for (final Path file : files) {
+                final Matcher matcher = SEGMENT.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    segments.put(Integer.parseInt(matcher.group(1)), openSegment(file));
+                }
+            }
+        }
+        openIndex();
+        replay();
+        activeSize = segments.isEmpty() ? 0 : segments.lastEntry().getValue().size();
+    }
+
+    private static FileChannel openSegment(final Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private Path segmentPath(final int segment) {
+        return directory.resolve("segment-" + segment + ".log");
+    }
+
+    /**
+     * Downloads document, or takes it from storage if it was downloaded before.
+     *
+     * @param url URL of the document to download.
+     * @return downloaded document.
+     * @throws IOException if an error occurred, stored errors are rethrown.
+     */
+    @Override
+    public Document download(final String url) throws IOException {
+        final URI uri = URLUtils.getURI(url);
+        final byte[] key = uri.toString().getBytes(StandardCharsets.UTF_8);
+        final long fingerprint = fingerprint(key);
+        final ByteBuffer head = readRecord(fingerprint, key, false);
+        if (head != null) {
+            final boolean failed = head.get() == FAIL_MARKER;
+            sleep((long) (head.getLong() * timeScale));
+            if (failed) {
+                throw readException(head);
+            }
+            return storedDocument(uri, fingerprint, key, head.getInt(0) + Integer.BYTES - HEAD - key.length);
+        }
+        final long start = System.currentTimeMillis();
+        final byte[] data;
+        try {
+            final URLConnection connection = uri.toURL().openConnection();
+            connection.setReadTimeout(READ_TIMEOUT);
+            try (final InputStream is = connection.getInputStream()) {
+                data = is.readAllBytes();
+            }
+        } catch (IOException e) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (final ObjectOutputStream oos = new ObjectOutputStream(out)) {
+                oos.writeObject(e);
+            }
+            append(fingerprint, key, FAIL_MARKER, System.currentTimeMillis() - start, out.toByteArray());
+            throw e;
+        }
+        append(fingerprint, key, OK_MARKER, System.currentTimeMillis() - start, data);
+        return storedDocument(uri, fingerprint, key, data.length);
+    }
+
+    /**
+     * Return document reading its page from storage when links are extracted, so kept document
+     * does not hold the page
+     *
+     * @param uri         URI of document
+     * @param fingerprint fingerprint of key
+     * @param key         key
+     * @param size        size of page
+     * @return document
+     */
+    private Document storedDocument(final URI uri, final long fingerprint, final byte[] key, final long size) {
+        return new StoredDocument(size, () -> {
+            final ByteBuffer record = readRecord(fingerprint, key, true);
+            if (record == null) {
+                throw new IOException("Document " + uri + " was removed from storage");
+            }
+            record.position(record.position() + 1 + Long.BYTES);
+            return extractor.extractLinks(uri, new ByteArrayInputStream(
+                    record.array(), record.position(), record.remaining()));
+        });
+    }
+
+    private record StoredDocument(long size, Document document) implements SizedDocument {
+        @Override
+        public List<String> extractLinks() throws IOException {
+            return document.extractLinks();
+        }
+    }
+
+    private static IOException readException(final ByteBuffer data) throws IOException {
+        try (final ObjectInputStream ois = new ObjectInputStream(
+                new ByteArrayInputStream(data.array(), data.position(), data.remaining()))) {
+            return (IOException) ois.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static void sleep(final long millis) throws InterruptedIOException {
+        if (millis > 0) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while simulating load time");
+            }
+        }
+    }
+
+    /**
+     * Remove document from storage, so it is downloaded again
+     *
+     * @param url URL of the document
+     * @return {@code true} if document was stored
+     * @throws IOException if an error occurred
+     */
+    public boolean remove(final String url) throws IOException {
+        final byte[] key = URLUtils.getURI(url).toString().getBytes(StandardCharsets.UTF_8);
+        final long fingerprint = fingerprint(key);
+        lock.writeLock().lock();
+        try {
+            if (readRecord(fingerprint, key, false) == null) {
+                return false;
+            }
+            append(fingerprint, key, REMOVED_MARKER, 0, new byte[0]);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrite stored documents to new segments and delete old ones, dropping removed and duplicate records
+     *
+     * @throws IOException if an error occurred
+     */
+    public void compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            final List<Integer> old = new ArrayList<>(segments.keySet());
+            startSegment();
+            for (int slot = 0; slot < slots; ++slot) {
+                final int position = INDEX_HEADER + slot * SLOT;
+                if (index.getLong(position) != 0) {
+                    final long location = index.getLong(position + Long.BYTES);
+                    final int length = index.getInt(position + 2 * Long.BYTES);
+                    final ByteBuffer record = ByteBuffer.allocate(length);
+                    readFully(segments.get(segment(location)), record, offset(location));
+                    index.putLong(position + Long.BYTES, write(record.flip()));
+                }
+            }
+            setIndexed(segments.lastKey(), activeSize);
+            for (final FileChannel channel : segments.values()) {
+                channel.force(false);
+            }
+            index.force();
+            for (final int segment : old) {
+                segments.remove(segment).close();
+                Files.delete(segmentPath(segment));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Read record of key
+     *
+     * @param fingerprint fingerprint of key
+     * @param key         key
+     * @param whole       whether whole record should be read, otherwise only head is read
+     *                    unless record is error
+     * @return record positioned at marker or {@code null} if there is no record of key
+     * @throws IOException if record could not be read
+     */
+    private ByteBuffer readRecord(final long fingerprint, final byte[] key, final boolean whole) throws IOException {
+        lock.readLock().lock();
+        try {
+            final int slot = find(fingerprint);
+            if (slot < 0) {
+                return null;
+            }
+            final int position = INDEX_HEADER + slot * SLOT;
+            final long location = index.getLong(position + Long.BYTES);
+            final int length = index.getInt(position + 2 * Long.BYTES);
+            final boolean failed = index.getInt(position + 2 * Long.BYTES + Integer.BYTES) == FAIL_MARKER;
+            final int size = whole || failed ? length : Math.min(length, HEAD + key.length);
+            final ByteBuffer record = ByteBuffer.allocate(size);
+            readFully(segments.get(segment(location)), record, offset(location));
+            record.flip().position(Integer.BYTES);
+            if (record.getInt() != key.length
+                    || !Arrays.equals(record.array(), record.position(), record.position() + key.length, key, 0, key.length)) {
+                // fingerprint collision
+                return null;
+            }
+            return record.position(record.position() + key.length);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of segment");
+            }
+        }
+    }
+
+    /**
+     * Append record and index it
+     *
+     * @param fingerprint fingerprint of key
+     * @param key         key
+     * @param marker      marker of record
+     * @param loadTime    load time
+     * @param data        page, serialized exception or nothing for removal
+     * @throws IOException if record could not be written
+     */
+    private void append(final long fingerprint,
+                        final byte[] key,
+                        final byte marker,
+                        final long loadTime,
+                        final byte[] data) throws IOException {
+        final ByteBuffer record = ByteBuffer.allocate(HEAD + key.length + data.length);
+        record.putInt(record.capacity() - Integer.BYTES).putInt(key.length).put(key)
+                .put(marker).putLong(loadTime).put(data).flip();
+        lock.writeLock().lock();
+        try {
+            final long location = write(record);
+            apply(fingerprint, marker, location, record.capacity());
+            setIndexed(segment(location), activeSize);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Write record to the end of the last segment, starting new one if it is full. Write lock should be held
+     *
+     * @param record record
+     * @return location of record
+     * @throws IOException if record could not be written
+     */
+    private long write(final ByteBuffer record) throws IOException {
+        if (segments.isEmpty() || activeSize > 0 && activeSize + record.remaining() > SEGMENT_BYTES) {
+            startSegment();
+        }
+        final int segment = segments.lastKey();
+        final FileChannel channel = segments.get(segment);
+        final long offset = activeSize;
+        while (record.hasRemaining()) {
+            channel.write(record, offset + record.position());
+        }
+        activeSize += record.capacity();
+        return ((long) segment << OFFSET_BITS) | offset;
+    }
+
+    private void startSegment() throws IOException {
+        final int segment = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+        segments.put(segment, openSegment(segmentPath(segment)));
+        activeSize = 0;
+    }
+
+    private static int segment(final long location) {
+        return (int) (location >>> OFFSET_BITS);
+    }
+
+    private static long offset(final long location) {
+        return location & ((1L << OFFSET_BITS) - 1);
+    }
+
+    private static long fingerprint(final byte[] key) {
+        final long fingerprint = VisitedSet.fingerprint(new String(key, StandardCharsets.UTF_8));
+        return fingerprint == 0 ? ZERO : fingerprint;
+    }
+
+    /**
+     * Update index by record
+     *
+     * @param fingerprint fingerprint of key
+     * @param marker      marker of record
+     * @param location    location of record
+     * @param length      length of record
+     * @throws IOException if index could not be grown
+     */
+    private void apply(final long fingerprint, final byte marker, final long location, final int length)
+            throws IOException {
+        int slot = find(fingerprint);
+        if (marker == REMOVED_MARKER) {
+            if (slot >= 0) {
+                delete(slot);
+            }
+            return;
+        }
+        if (slot < 0) {
+            if (2 * (count + 1) > slots) {
+                resize(slots * 2);
+                slot = find(fingerprint);
+            }
+            slot = -slot - 1;
+            count++;
+            index.putInt(Long.BYTES + Integer.BYTES, count);
+        }
+        putSlot(slot, fingerprint, location, length, marker);
+    }
+
+    /**
+     * Find slot of fingerprint
+     *
+     * @param fingerprint fingerprint
+     * @return slot or {@code -slot - 1} of empty slot where it should be inserted
+     */
+    private int find(final long fingerprint) {
+        final int mask = slots - 1;
+        int slot = (int) fingerprint & mask;
+        while (true) {
+            final long current = index.getLong(INDEX_HEADER + slot * SLOT);
+            if (current == fingerprint) {
+                return slot;
+            }
+            if (current == 0) {
+                return -slot - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void putSlot(final int slot, final long fingerprint, final long location, final int length, final int marker) {
+        final int position = INDEX_HEADER + slot * SLOT;
+        index.putLong(position, fingerprint);
+        index.putLong(position + Long.BYTES, location);
+        index.putInt(position + 2 * Long.BYTES, length);
+        index.putInt(position + 2 * Long.BYTES + Integer.BYTES, marker);
+    }
+
+    /**
+     * Delete slot, shifting back following slots of the probe sequence
+     *
+     * @param slot slot to delete
+     */
+    private void delete(int slot) {
+        final int mask = slots - 1;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            final int position = INDEX_HEADER + next * SLOT;
+            final long fingerprint = index.getLong(position);
+            if (fingerprint == 0) {
+                break;
+            }
+            final int home = (int) fingerprint & mask;
+            final boolean movable = slot <= next ? home <= slot || home > next : home <= slot && home > next;
+            if (movable) {
+                putSlot(slot, fingerprint, index.getLong(position + Long.BYTES),
+                        index.getInt(position + 2 * Long.BYTES), index.getInt(position + 2 * Long.BYTES + Integer.BYTES));
+                slot = next;
+            }
+        }
+        putSlot(slot, 0, 0, 0, 0);
+        count--;
+        index.putInt(Long.BYTES + Integer.BYTES, count);
+    }
+
+    private void setIndexed(final int segment, final long offset) {
+        index.putInt(Long.BYTES + 2 * Integer.BYTES, segment);
+        index.putLong(Long.BYTES + 4 * Integer.BYTES, offset);
+    }
+
+    private void openIndex() throws IOException {
+        final Path path = directory.resolve(INDEX);
+        if (Files.exists(path) && Files.size(path) >= INDEX_HEADER) {
+            indexChannel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, indexChannel.size());
+            slots = index.getInt(Long.BYTES);
+            if (index.getLong(0) == INDEX_MAGIC && (long) INDEX_HEADER + (long) slots * SLOT == indexChannel.size()) {
+                count = index.getInt(Long.BYTES + Integer.BYTES);
+                return;
+            }
+            indexChannel.close();
+        }
+        createIndex(path, INITIAL_SLOTS);
+        setIndexed(segments.isEmpty() ? 0 : segments.firstKey(), 0);
+    }
+
+    private void createIndex(final Path path, final int size) throws IOException {
+        if ((long) INDEX_HEADER + (long) size * SLOT > Integer.MAX_VALUE) {
+            throw new IOException("Index of " + size + " slots is too large");
+        }
+        indexChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER + (long) size * SLOT);
+        index.putLong(0, INDEX_MAGIC);
+        index.putInt(Long.BYTES, size);
+        slots = size;
+        count = 0;
+    }
+
+    /**
+     * Rebuild index with given number of slots in temporary file and replace index by it
+     *
+     * @param size new number of slots
+     * @throws IOException if index could not be written
+     */
+    private void resize(final int size) throws IOException {
+        final MappedByteBuffer oldIndex = index;
+        final FileChannel oldChannel = indexChannel;
+        final int oldSlots = slots;
+        final Path temporary = directory.resolve(INDEX + ".tmp");
+        createIndex(temporary, size);
+        index.putInt(Long.BYTES + 2 * Integer.BYTES, oldIndex.getInt(Long.BYTES + 2 * Integer.BYTES));
+        index.putLong(Long.BYTES + 4 * Integer.BYTES, oldIndex.getLong(Long.BYTES + 4 * Integer.BYTES));
+        for (int slot = 0; slot < oldSlots; ++slot) {
+            final int position = INDEX_HEADER + slot * SLOT;
+            final long fingerprint = oldIndex.getLong(position);
+            if (fingerprint != 0) {
+                putSlot(-find(fingerprint) - 1, fingerprint, oldIndex.getLong(position + Long.BYTES),
+                        oldIndex.getInt(position + 2 * Long.BYTES),
+                        oldIndex.getInt(position + 2 * Long.BYTES + Integer.BYTES));
+                count++;
+            }
+        }
+        index.putInt(Long.BYTES + Integer.BYTES, count);
+        index.force();
+        oldChannel.close();
+        Files.move(temporary, directory.resolve(INDEX),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Index records written after the last indexed position, cutting incomplete record at the end
+     *
+     * @throws IOException if segments could not be read
+     */
+    private void replay() throws IOException {
+        final int indexedSegment = index.getInt(Long.BYTES + 2 * Integer.BYTES);
+        final long indexedOffset = index.getLong(Long.BYTES + 4 * Integer.BYTES);
+        for (final Map.Entry<Integer, FileChannel> entry : segments.tailMap(indexedSegment, true).entrySet()) {
+            final int segment = entry.getKey();
+            final FileChannel channel = entry.getValue();
+            final long size = channel.size();
+            long offset = segment == indexedSegment ? indexedOffset : 0;
+            while (offset < size) {
+                final ByteBuffer lengths = ByteBuffer.allocate(2 * Integer.BYTES);
+                if (offset + lengths.capacity() > size) {
+                    channel.truncate(offset);
+                    break;
+                }
+                readFully(channel, lengths, offset);
+                final int length = lengths.getInt(0) + Integer.BYTES;
+                final int keyLength = lengths.getInt(Integer.BYTES);
+                if (keyLength < 0 || length < HEAD + keyLength || offset + length > size) {
+                    channel.truncate(offset);
+                    break;
+                }
+                final ByteBuffer keyAndMarker = ByteBuffer.allocate(keyLength + 1);
+                readFully(channel, keyAndMarker, offset + lengths.capacity());
+                final byte[] key = Arrays.copyOf(keyAndMarker.array(), keyLength);
+                apply(fingerprint(key), keyAndMarker.get(keyLength), ((long) segment << OFFSET_BITS) | offset, length);
+                offset += length;
+            }
+            setIndexed(segment, offset);
+        }
+    }
+
+    /**
+     * Force storage to the device and close it
+     *
+     * @throws IOException if an error occurred
+     */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            for (final FileChannel channel : segments.values()) {
+                channel.force(false);
+                channel.close();
+            }
+            index.force();
+            indexChannel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package info.kgeorgiy.ja.osipov.crawler;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Append-only log of text lines stored in segment files {@code name-0.log}, {@code name-1.log}, ...
+ * <p>
+ * New segment is started when current one exceeds {@link #SEGMENT_BYTES}.
+ * Incomplete last line left by crash is cut off when log is opened, so every read line was appended whole.
+ * Appending is thread-safe
+ *
+ * @author Osipov Daniil
+ */
+class SegmentLog implements Closeable {
+
+    /**
+     * Size of segment after which new segment is started
+     */
+    static final long SEGMENT_BYTES = 16 << 20;
+
+    private final Path dir;
+    private final String name;
+    private int segment;
+    private long segmentSize;
+    private FileOutputStream stream;
+    private Writer writer;
+
+    /**
+     * Open log for appending, creating it if absent
+     *
+     * @param dir  directory of segment files
+     * @param name name of the log
+     * @throws IOException if log could not be opened
+     */
+    SegmentLog(final Path dir, final String name) throws IOException {
+        this.dir = dir;
+        this.name = name;
+        this.segment = Math.max(0, segments(dir, name) - 1);
+        final Path path = segmentPath(segment);
+        if (Files.exists(path)) {
+            cutIncompleteLine(path);
+        }
+        open();
+    }
+
+    private Path segmentPath(final int index) {
+        return dir.resolve(name + "-" + index + ".log");
+    }
+
+    /**
+     * Return number of existing segments of log
+     *
+     * @param dir  directory of segment files
+     * @param name name of the log
+     * @return number of segments
+     */
+    private static int segments(final Path dir, final String name) {
+        int count = 0;
+        while (Files.exists(dir.resolve(name + "-" + count + ".log"))) {
+            count++;
+        }
+        return count;
+    }
+
+    private void open() throws IOException {
+        final Path path = segmentPath(segment);
+        stream = new FileOutputStream(path.toFile(), true);
+        writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8));
+        segmentSize = Files.size(path);
+    }
+
+    /**
+     * Truncate file after its last line terminator
+     *
+     * @param path file to truncate
+     * @throws IOException if file could not be truncated
+     */
+    private static void cutIncompleteLine(final Path path) throws IOException {
+        try (final RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            long length = file.length();
+            while (length > 0) {
+                file.seek(length - 1);
+                if (file.read() == '\n') {
+                    break;
+                }
+                length--;
+            }
+            file.setLength(length);
+        }
+    }
+
+    /**
+     * Append line to the log
+     *
+     * @param line line without line terminators
+     * @throws IOException if line could not be written
+     */
+    synchronized void append(final String line) throws IOException {
+        if (segmentSize >= SEGMENT_BYTES) {
+            // later sync forces only the new segment
+            sync();
+            writer.close();
+            segment++;
+            open();
+        }
+        writer.write(line);
+        writer.write('\n');
+        segmentSize += line.getBytes(StandardCharsets.UTF_8).length + 1;
+    }
+
+    /**
+     * Write buffered lines and force them to the storage device
+     *
+     * @throws IOException if lines could not be written
+     */
+    synchronized void sync() throws IOException {
+        writer.flush();
+        stream.getChannel().force(false);
+    }
+
+    /**
+     * Return whether log has no lines
+     *
+     * @param dir  directory of segment files
+     * @param name name of the log
+     * @return {@code true} if log has no segments or they are empty
+     * @throws IOException if segments could not be read
+     */
+    static boolean isEmpty(final Path dir, final String name) throws IOException {
+        for (int i = 0; i < segments(dir, name); ++i) {
+            if (Files.size(dir.resolve(name + "-" + i + ".log")) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read lines of log, written before this call, lazily
+     *
+     * @param dir  directory of segment files
+     * @param name name of the log
+     * @param skip number of lines to skip
+     * @return iterator over lines, it should be read to the end or closed
+     * @throws IOException if log could not be read
+     */
+    static LineReader read(final Path dir, final String name, final long skip) throws IOException {
+        final LineReader reader = new LineReader(dir, name, segments(dir, name));
+        for (long i = 0; i < skip && reader.hasNext(); ++i) {
+            reader.next();
+        }
+        return reader;
+    }
+
+    /**
+     * Lazy reader of log lines
+     */
+    static class LineReader implements Iterator<String>, Closeable {
+        private final Path dir;
+        private final String name;
+        private final int segments;
+        private int segment = -1;
+        private BufferedReader current;
+        private String line;
+
+        private LineReader(final Path dir, final String name, final int segments) {
+            this.dir = dir;
+            this.name = name;
+            this.segments = segments;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                while (line == null) {
+                    if (current != null) {
+                        line = current.readLine();
+                        if (line != null) {
+                            break;
+                        }
+                        current.close();
+                        current = null;
+                    }
+                    if (++segment >= segments) {
+                        return false;
+                    }
+                    current = Files.newBufferedReader(dir.resolve(name + "-" + segment + ".log"), StandardCharsets.UTF_8);
+                }
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final String result = line;
+            line = null;
+            return result;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (current != null) {
+                current.close();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,19 @@
+package info.kgeorgiy.ja.osipov.crawler;
+
+import info.kgeorgiy.java.advanced.crawler.Document;
+
+/**
+ * {@link Document} that knows size of downloaded page.
+ * Sizes of other documents are not counted by {@link CrawlerMetrics}
+ *
+ * @author Osipov Daniil
+ */
+public interface SizedDocument extends Document {
+
+    /**
+     * Return size of downloaded page
+     *
+     * @return size in bytes
+     */
+    long size();
+}
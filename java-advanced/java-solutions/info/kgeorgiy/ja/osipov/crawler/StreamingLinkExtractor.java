@@ -0,0 +1,518 @@
+package info.kgeorgiy.ja.osipov.crawler;
+
+import info.kgeorgiy.java.advanced.crawler.URLUtils;
+import org.jsoup.nodes.Entities;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link LinkExtractor} scanning document for tags without building DOM
+ * <p>
+ * Document is decoded as UTF-8 and read through fixed buffer. Tags, attributes, comments and character
+ * references in attributes are tokenized as by HTML parser of {@link URLUtils#extractLinks}, contents of
+ * raw text elements such as {@code script} are skipped, links are resolved against document URL as by
+ * {@link URLUtils#extractLinks}. Unlike DOM parser, link of {@code a} tag reopened by misnested markup is
+ * listed once, {@code a} tags inside {@code select} are not dropped and charset declared by {@code meta}
+ * tag is not used
+ *
+ * @author Osipov Daniil
+ */
+public class StreamingLinkExtractor implements LinkExtractor {
+
+    private static final int BUFFER = 8192;
+    /**
+     * Elements which content is text up to their end tag
+     */
+    private static final String[] RAW_TEXT = {
+            "script", "style", "xmp", "iframe", "noembed", "noframes", "textarea", "title"
+    };
+
+    @Override
+    public List<String> extractLinks(final URI url, final InputStream is) throws IOException {
+        return new Scanner(url, new InputStreamReader(is, StandardCharsets.UTF_8)).scan();
+    }
+
+    /**
+     * Scanner of single document
+     */
+    private static class Scanner {
+        private final URI url;
+        private final Reader reader;
+        private final char[] buffer = new char[BUFFER];
+        private int position;
+        private int limit;
+        private final StringBuilder name = new StringBuilder();
+        private final StringBuilder attribute = new StringBuilder();
+        private final StringBuilder value = new StringBuilder();
+        private final StringBuilder reference = new StringBuilder();
+        private final List<String> links = new ArrayList<>();
+        /**
+         * Value of the last {@code href} attribute of current tag or {@code null}
+         */
+        private String href;
+        private boolean selfClosing;
+
+        private Scanner(final URI url, final Reader reader) {
+            this.url = url;
+            this.reader = reader;
+        }
+
+        private int next() throws IOException {
+            return position < limit || fill() ? buffer[position++] : -1;
+        }
+
+        /**
+         * Read next part of document to empty buffer
+         *
+         * @return {@code false} at end of document
+         * @throws IOException if document could not be read
+         */
+        private boolean fill() throws IOException {
+            limit = Math.max(0, reader.read(buffer, 0, BUFFER));
+            position = 0;
+            return limit > 0;
+        }
+
+        /**
+         * Unread the last read character, which should not be end of stream
+         */
+        private void back() {
+            position--;
+        }
+
+        private static boolean isWhitespace(final int c) {
+            return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+        }
+
+        private static boolean isLetter(final int c) {
+            return 'a' <= c && c <= 'z' || 'A' <= c && c <= 'Z';
+        }
+
+        private static boolean isDigit(final int c) {
+            return '0' <= c && c <= '9';
+        }
+
+        private static boolean isHexDigit(final int c) {
+            return isDigit(c) || 'a' <= c && c <= 'f' || 'A' <= c && c <= 'F';
+        }
+
+        private static char lower(final int c) {
+            return (char) ('A' <= c && c <= 'Z' ? c - 'A' + 'a' : c);
+        }
+
+        private List<String> scan() throws IOException {
+            while (skipTo('<')) {
+                if (!tagOpen()) {
+                    break;
+                }
+            }
+            return links;
+        }
+
+        /**
+         * Process markup after {@code <}
+         *
+         * @return {@code false} if the rest of document is text
+         * @throws IOException if document could not be read
+         */
+        private boolean tagOpen() throws IOException {
+            final int c = next();
+            if (c == '!') {
+                markupDeclaration();
+            } else if (c == '/') {
+                final int d = next();
+                if (isLetter(d)) {
+                    back();
+                    tag(true);
+                } else if (d >= 0 && d != '>') {
+                    skipTo('>');
+                }
+            } else if (c == '?') {
+                skipTo('>');
+            } else if (isLetter(c)) {
+                back();
+                return tag(false);
+            } else if (c >= 0) {
+                back();
+            }
+            return true;
+        }
+
+        private void markupDeclaration() throws IOException {
+            int c = next();
+            if (c == '-') {
+                c = next();
+                if (c == '-') {
+                    comment();
+                    return;
+                }
+            } else if (c == '[') {
+                if (matches("CDATA[")) {
+                    skipCdata();
+                    return;
+                }
+                c = next();
+            }
+            // doctype or bogus comment
+            if (c >= 0 && c != '>') {
+                skipTo('>');
+            }
+        }
+
+        /**
+         * Consume characters equal to given string
+         *
+         * @param expected expected characters
+         * @return {@code true} if all characters matched, otherwise mismatched character is not consumed
+         * @throws IOException if document could not be read
+         */
+        private boolean matches(final String expected) throws IOException {
+            for (int i = 0; i < expected.length(); ++i) {
+                final int c = next();
+                if (c != expected.charAt(i)) {
+                    if (c >= 0) {
+                        back();
+                    }
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Consume characters up to and including given one
+         *
+         * @param target character to find
+         * @return {@code false} if document ended before character
+         * @throws IOException if document could not be read
+         */
+        private boolean skipTo(final char target) throws IOException {
+            do {
+                while (position < limit) {
+                    if (buffer[position++] == target) {
+                        return true;
+                    }
+                }
+            } while (fill());
+            return false;
+        }
+
+        private void comment() throws IOException {
+            // opening dashes count for "<!-->" and "<!--->"
+            int dashes = 2;
+            int c;
+            while ((c = next()) >= 0) {
+                if (c == '-') {
+                    dashes++;
+                } else if (c == '>' && dashes >= 2) {
+                    return;
+                } else if (c == '!' && dashes >= 2) {
+                    final int d = next();
+                    if (d < 0 || d == '>') {
+                        return;
+                    }
+                    back();
+                    dashes = 0;
+                } else {
+                    dashes = 0;
+                }
+            }
+        }
+
+        private void skipCdata() throws IOException {
+            int brackets = 0;
+            int c;
+            while ((c = next()) >= 0) {
+                if (c == ']') {
+                    brackets = Math.min(brackets + 1, 2);
+                } else if (c == '>' && brackets == 2) {
+                    return;
+                } else {
+                    brackets = 0;
+                }
+            }
+        }
+
+        /**
+         * Process tag starting with letter
+         *
+         * @param end whether tag is end tag
+         * @return {@code false} if the rest of document is text
+         * @throws IOException if document could not be read
+         */
+        private boolean tag(final boolean end) throws IOException {
+            name.setLength(0);
+            int c;
+            while ((c = next()) >= 0 && !isWhitespace(c) && c != '/' && c != '>') {
+                name.append(lower(c));
+            }
+            if (c < 0) {
+                return true;
+            }
+            back();
+            final boolean anchor = !end && name.length() == 1 && name.charAt(0) == 'a';
+            if (!attributes(anchor)) {
+                // tag is dropped at end of document
+                return true;
+            }
+            if (anchor && href != null) {
+                addLink(href);
+            }
+            if (!end) {
+                if ("plaintext".contentEquals(name)) {
+                    return false;
+                }
+                for (final String rawText : RAW_TEXT) {
+                    // self-closing script is closed immediately, other raw text elements are not
+                    if (rawText.contentEquals(name) && !(selfClosing && rawText.equals("script"))) {
+                        skipRawText(rawText);
+                        break;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Process attributes up to the end of tag
+         *
+         * @param anchor whether {@code href} attribute should be remembered
+         * @return {@code false} if document ended inside tag
+         * @throws IOException if document could not be read
+         */
+        private boolean attributes(final boolean anchor) throws IOException {
+            href = null;
+            selfClosing = false;
+            while (true) {
+                int c = next();
+                if (c < 0) {
+                    return false;
+                }
+                if (isWhitespace(c)) {
+                    continue;
+                }
+                if (c == '>') {
+                    return true;
+                }
+                if (c == '/') {
+                    c = next();
+                    if (c == '>') {
+                        selfClosing = true;
+                        return true;
+                    }
+                    if (c < 0) {
+                        return false;
+                    }
+                    back();
+                    continue;
+                }
+                attribute.setLength(0);
+                attribute.append(lower(c));
+                while ((c = next()) >= 0 && !isWhitespace(c) && c != '/' && c != '=' && c != '>') {
+                    attribute.append(lower(c));
+                }
+                while (isWhitespace(c)) {
+                    c = next();
+                }
+                if (c < 0) {
+                    return false;
+                }
+                value.setLength(0);
+                int end = 0;
+                if (c == '=') {
+                    end = attributeValue();
+                    if (end < 0) {
+                        return false;
+                    }
+                } else {
+                    back();
+                }
+                if (anchor && attribute.length() == 4 && "href".contentEquals(attribute)) {
+                    // the last of duplicate attributes wins
+                    href = value.toString();
+                }
+                if (end == '>') {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Read attribute value after {@code =} to {@link #value}
+         *
+         * @return {@code '>'} if value ended tag, {@code -1} at end of document, {@code 0} otherwise
+         * @throws IOException if document could not be read
+         */
+        private int attributeValue() throws IOException {
+            int c = next();
+            while (isWhitespace(c)) {
+                c = next();
+            }
+            if (c < 0 || c == '>') {
+                return c;
+            }
+            if (c == '"' || c == '\'') {
+                final int quote = c;
+                while ((c = next()) != quote) {
+                    if (c < 0) {
+                        return -1;
+                    }
+                    if (c == '&') {
+                        characterReference(quote);
+                    } else {
+                        value.append((char) c);
+                    }
+                }
+                return 0;
+            }
+            back();
+            while ((c = next()) >= 0 && !isWhitespace(c) && c != '>') {
+                if (c == '&') {
+                    characterReference('>');
+                } else {
+                    value.append((char) c);
+                }
+            }
+            return c < 0 || c == '>' ? c : 0;
+        }
+
+        /**
+         * Decode character reference after {@code &} to {@link #value}, rules of HTML parser in attributes apply.
+         * Characters consumed by not decoded reference are appended as is, which is the same as reading them again
+         *
+         * @param allowed character ending attribute value
+         * @throws IOException if document could not be read
+         */
+        private void characterReference(final int allowed) throws IOException {
+            value.append('&');
+            int c = next();
+            if (c < 0) {
+                return;
+            }
+            if (c == allowed || isWhitespace(c) || c == '<' || c == '&') {
+                back();
+                return;
+            }
+            reference.setLength(0);
+            if (c == '#') {
+                reference.append('#');
+                c = next();
+                final boolean hex = c == 'x' || c == 'X';
+                if (hex) {
+                    reference.append((char) c);
+                    c = next();
+                }
+                final int start = reference.length();
+                while (hex ? isHexDigit(c) : isDigit(c)) {
+                    reference.append((char) c);
+                    c = next();
+                }
+                if (reference.length() == start) {
+                    value.append(reference);
+                    if (c >= 0) {
+                        back();
+                    }
+                    return;
+                }
+                if (c != ';' && c >= 0) {
+                    back();
+                }
+                int code;
+                try {
+                    code = Integer.parseInt(reference, start, reference.length(), hex ? 16 : 10);
+                } catch (NumberFormatException e) {
+                    code = -1;
+                }
+                value.setLength(value.length() - 1);
+                if (code < 0 || Character.MIN_SURROGATE <= code && code <= Character.MAX_SURROGATE
+                        || code > Character.MAX_CODE_POINT) {
+                    value.append('\uFFFD');
+                } else {
+                    value.appendCodePoint(code);
+                }
+                return;
+            }
+            while (isLetter(c)) {
+                reference.append((char) c);
+                c = next();
+            }
+            while (isDigit(c)) {
+                reference.append((char) c);
+                c = next();
+            }
+            final String entity = reference.toString();
+            final boolean found = Entities.isBaseNamedEntity(entity) || c == ';' && Entities.isNamedEntity(entity);
+            if (!found || isLetter(c) || isDigit(c) || c == '=' || c == '-' || c == '_') {
+                value.append(reference);
+                if (c >= 0) {
+                    back();
+                }
+                return;
+            }
+            if (c != ';' && c >= 0) {
+                back();
+            }
+            value.setLength(value.length() - 1);
+            value.append(Entities.getCharacterByName(entity).charValue());
+        }
+
+        /**
+         * Skip content of raw text element and its end tag
+         *
+         * @param tagName name of element
+         * @throws IOException if document could not be read
+         */
+        private void skipRawText(final String tagName) throws IOException {
+            int c;
+            while (skipTo('<')) {
+                c = next();
+                if (c != '/') {
+                    if (c >= 0) {
+                        back();
+                    }
+                    continue;
+                }
+                int matched = 0;
+                while (matched < tagName.length() && (c = next()) >= 0 && lower(c) == tagName.charAt(matched)) {
+                    matched++;
+                }
+                if (matched == tagName.length()) {
+                    c = next();
+                    if (isWhitespace(c) || c == '/' || c == '>') {
+                        back();
+                        attributes(false);
+                        return;
+                    }
+                }
+                if (c >= 0) {
+                    back();
+                }
+            }
+        }
+
+        /**
+         * Add link resolved as by {@link URLUtils#extractLinks}
+         *
+         * @param reference value of {@code href} attribute
+         */
+        private void addLink(final String reference) {
+            final URI link;
+            try {
+                link = url.resolve(reference);
+            } catch (IllegalArgumentException ignored) {
+                return;
+            }
+            if (link.getHost() != null && link.getScheme() != null
+                    && ("http".equalsIgnoreCase(link.getScheme()) || "https".equalsIgnoreCase(link.getScheme()))) {
+                links.add(URLUtils.removeFragment(link.normalize().toString()));
+            }
+        }
+    }
+}
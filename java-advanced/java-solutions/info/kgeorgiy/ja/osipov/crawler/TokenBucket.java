@@ -0,0 +1,46 @@
+package info.kgeorgiy.ja.osipov.crawler;
+
+/**
+ * Thread-safe token bucket limiting rate of requests
+ * <p>
+ * Bucket holds at most {@code burst} tokens and is refilled continuously at given rate,
+ * each request takes one token
+ *
+ * @author Osipov Daniil
+ */
+class TokenBucket {
+
+    private final double tokensPerNano;
+    private final int burst;
+    private double tokens;
+    private long updated;
+
+    /**
+     * Construct full bucket
+     *
+     * @param requestsPerSecond positive rate of refill
+     * @param burst             positive capacity of bucket
+     */
+    TokenBucket(final double requestsPerSecond, final int burst) {
+        this.tokensPerNano = requestsPerSecond / 1e9;
+        this.burst = burst;
+        this.tokens = burst;
+        this.updated = System.nanoTime();
+    }
+
+    /**
+     * Take token if there is one
+     *
+     * @return {@code 0} if token was taken, otherwise time in nanoseconds until the next token
+     */
+    synchronized long tryAcquire() {
+        final long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - updated) * tokensPerNano);
+        updated = now;
+        if (tokens >= 1) {
+            tokens--;
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil((1 - tokens) / tokensPerNano));
+    }
+}
@@ -0,0 +1,42 @@
+package info.kgeorgiy.ja.osipov.crawler;
+
+import info.kgeorgiy.java.advanced.crawler.URLUtils;
+
+/**
+ * Thread-safe set of visited pages, identified by 64-bit fingerprints of their canonical URLs
+ *
+ * @author Osipov Daniil
+ */
+interface VisitedSet {
+
+    /**
+     * Add fingerprint to the set
+     *
+     * @param fingerprint fingerprint of page
+     * @return {@code true} if fingerprint was not in the set
+     */
+    boolean add(long fingerprint);
+
+    /**
+     * Return fingerprint of page.
+     * URL is canonicalized by {@link URLUtils#removeFragment}, so URLs differing only in fragment have
+     * the same fingerprint. Empty path is not replaced by {@code /}, as such URLs are distinct pages of crawl
+     *
+     * @param url page URL
+     * @return fingerprint
+     */
+    static long fingerprint(final String url) {
+        final String canonical = URLUtils.removeFragment(url);
+        // FNV-1a, then finalizer of MurmurHash3 to spread bits over the whole word
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < canonical.length(); ++i) {
+            hash = (hash ^ canonical.charAt(i)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -1,19 +1,142 @@
 package info.kgeorgiy.ja.osipov.crawler;
 
 import info.kgeorgiy.java.advanced.crawler.*;
+import jdk.jfr.FlightRecorder;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
 
 public class WebCrawler implements AdvancedCrawler {
 
+    /**
+     * Maximal distance between the first not processed and the last scheduled frontier entry of resumable crawl
+     */
+    private static final int RESUMABLE_WINDOW = 4096;
+    /**
+     * Number of processed frontier entries between checkpoints of resumable crawl
+     */
+    private static final int CHECKPOINT_ENTRIES = 1024;
+    /**
+     * Maximal time between checkpoints of resumable crawl
+     */
+    private static final long CHECKPOINT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
     private final Downloader downloader;
     private final ExecutorService extractorService;
     private final ExecutorService downloaderService;
+    /**
+     * Wakes up rate-limited hosts, created by first {@link #setRateLimit}, guarded by {@link #rateLimits}
+     */
+    private volatile ScheduledExecutorService scheduler;
+    /**
+     * Limit of parallel downloads in {@link DownloaderThreads#VIRTUAL} mode or {@code null}
+     */
+    private final Semaphore downloadPermits;
     private final int perHost;
-    private Map<String, HostTask> hostTasks;
+    private final Mode mode;
+    private final Map<String, HostController> hostControllers = new ConcurrentHashMap<>();
+    private volatile boolean adaptivePerHost;
+    private volatile Supplier<VisitedSet> visitedSets = FingerprintSet::new;
+    private volatile FrontierPolicy frontierPolicy = FrontierPolicy.FIFO;
+    private volatile long pageBudget = Long.MAX_VALUE;
+    /**
+     * Order of queued downloads with equal priority
+     */
+    private final AtomicLong sequence = new AtomicLong();
+    /**
+     * Rate limits by host pattern, in order they were set, guarded by itself
+     */
+    private final Map<String, RateLimit> rateLimits = new LinkedHashMap<>();
+    /**
+     * Operational metrics, disabled until {@link CrawlerMetrics#setEnabled(boolean)}
+     */
+    private final CrawlerMetrics metrics;
+    /**
+     * Hooks of periodic JFR events, removed on {@link #close()}
+     */
+    private final Runnable queuesHook = this::commitQueues;
+    private final Runnable hostQueuesHook = this::commitHostQueues;
+
+    private record RateLimit(Pattern hosts, double requestsPerSecond, int burst) {
+    }
+
+    /**
+     * Download ordered by {@link FrontierPolicy} priority, then by sequence number
+     */
+    private record PrioritizedTask(double priority, long sequence, Runnable task)
+            implements Runnable, Comparable<PrioritizedTask> {
+        @Override
+        public void run() {
+            task.run();
+        }
+
+        @Override
+        public int compareTo(final PrioritizedTask other) {
+            final int compared = Double.compare(priority, other.priority);
+            return compared != 0 ? compared : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    /**
+     * Kinds of threads running downloads
+     */
+    public enum DownloaderThreads {
+        /**
+         * Fixed pool of {@code downloaders} platform threads
+         */
+        PLATFORM,
+        /**
+         * Virtual thread per download, at most {@code downloaders} of them download at once.
+         * Blocked downloads do not occupy platform threads
+         */
+        VIRTUAL
+    }
+
+    /**
+     * Snapshot of download statistics of single host
+     *
+     * @param concurrencyLimit current limit of parallel downloads from the host
+     * @param downloads number of finished downloads
+     * @param errors number of failed downloads
+     * @param meanLatency mean time of download
+     * @param smoothedLatency exponentially smoothed time of download
+     * @param queued number of downloads waiting for limit of the host
+     * @param inFlight number of running downloads from the host
+     */
+    public record HostStatistics(int concurrencyLimit,
+                                 long downloads,
+                                 long errors,
+                                 Duration meanLatency,
+                                 Duration smoothedLatency,
+                                 int queued,
+                                 int inFlight) {
+    }
+
+    /**
+     * Ways of scheduling pages of single {@link #download} call
+     */
+    public enum Mode {
+        /**
+         * Pages of each depth are downloaded after all pages of previous depth
+         */
+        LEVEL_BY_LEVEL,
+        /**
+         * Links are scheduled as soon as they are extracted, without waiting for other pages of the same depth.
+         * Each page keeps the shortest depth it was reached by, completion is detected by counter
+         * of tasks in flight
+         */
+        PIPELINED
+    }
 
     /**
      * Constructor for web-crawler
@@ -28,10 +151,219 @@ public class WebCrawler implements AdvancedCrawler {
                       final int downloaders,
                       final int extractors,
                       final int perHost) {
+        this(downloader, downloaders, extractors, perHost, Mode.LEVEL_BY_LEVEL);
+    }
+
+    /**
+     * Constructor for web-crawler with given way of scheduling pages
+     *
+     * @param downloader {@link Downloader} token for downloading pages
+     * @param downloaders max pages to be downloaded parallel
+     * @param extractors max pages from that parallel extracted links
+     * @param perHost max pages to be downloaded parallel to each host
+     * @param mode way of scheduling pages
+     */
+    public WebCrawler(final Downloader downloader,
+                      final int downloaders,
+                      final int extractors,
+                      final int perHost,
+                      final Mode mode) {
+        this(downloader, downloaders, extractors, perHost, mode, DownloaderThreads.PLATFORM);
+    }
+
+    /**
+     * Constructor for web-crawler with given way of scheduling pages and kind of downloader threads
+     *
+     * @param downloader {@link Downloader} token for downloading pages
+     * @param downloaders max pages to be downloaded parallel
+     * @param extractors max pages from that parallel extracted links
+     * @param perHost max pages to be downloaded parallel to each host
+     * @param mode way of scheduling pages
+     * @param threads kind of threads running downloads
+     */
+    public WebCrawler(final Downloader downloader,
+                      final int downloaders,
+                      final int extractors,
+                      final int perHost,
+                      final Mode mode,
+                      final DownloaderThreads threads) {
         this.downloader = downloader;
-        this.downloaderService = Executors.newFixedThreadPool(downloaders);
-        this.extractorService = Executors.newFixedThreadPool(extractors);
+        final IntSupplier downloadQueue;
+        if (threads == DownloaderThreads.VIRTUAL) {
+            final Semaphore permits = new Semaphore(downloaders, true);
+            this.downloaderService = Executors.newVirtualThreadPerTaskExecutor();
+            this.downloadPermits = permits;
+            downloadQueue = permits::getQueueLength;
+        } else {
+            // queued downloads of all hosts are taken in order of priority
+            final ThreadPoolExecutor pool = new ThreadPoolExecutor(downloaders, downloaders,
+                    0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>());
+            this.downloaderService = pool;
+            this.downloadPermits = null;
+            downloadQueue = () -> pool.getQueue().size();
+        }
+        final ThreadPoolExecutor extractorPool = newFixedThreadPool(extractors);
+        this.extractorService = extractorPool;
         this.perHost = perHost;
+        this.mode = mode;
+        this.metrics = new CrawlerMetrics(downloadQueue, () -> extractorPool.getQueue().size(), this::getHostStatistics);
+        FlightRecorder.addPeriodicEvent(CrawlerEvents.Queues.class, queuesHook);
+        FlightRecorder.addPeriodicEvent(CrawlerEvents.HostQueue.class, hostQueuesHook);
+    }
+
+    private static ThreadPoolExecutor newFixedThreadPool(final int threads) {
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+    }
+
+    /**
+     * Return operational metrics of this web-crawler. Metrics are disabled by default,
+     * use {@link CrawlerMetrics#setEnabled(boolean)} to start collecting them.
+     * Downloads, extractions and queues are also reported as JFR events of category {@code WebCrawler}
+     *
+     * @return metrics of this web-crawler
+     */
+    public CrawlerMetrics getMetrics() {
+        return metrics;
+    }
+
+    private void commitQueues() {
+        final CrawlerEvents.Queues event = new CrawlerEvents.Queues();
+        event.downloadQueue = metrics.downloadQueue();
+        event.extractQueue = metrics.extractQueue();
+        event.commit();
+    }
+
+    private void commitHostQueues() {
+        getHostStatistics().forEach((host, statistics) -> {
+            final CrawlerEvents.HostQueue event = new CrawlerEvents.HostQueue();
+            event.host = host;
+            event.queued = statistics.queued();
+            event.inFlight = statistics.inFlight();
+            event.limit = statistics.concurrencyLimit();
+            event.commit();
+        });
+    }
+
+    /**
+     * Enable or disable adaptive limit of parallel downloads per host.
+     * <p>
+     * Adaptive limit starts at {@code 1}, grows while downloads from the host succeed in usual time and is
+     * halved when download fails or is several times slower than usual, it never exceeds {@code perHost}.
+     * Limits are learned during the whole lifetime of web-crawler. Disabled by default,
+     * then limit is always {@code perHost}
+     *
+     * @param adaptive whether limit is adaptive
+     */
+    public void setAdaptivePerHost(final boolean adaptive) {
+        this.adaptivePerHost = adaptive;
+    }
+
+    /**
+     * Limit rate of downloads from hosts matching given pattern.
+     * <p>
+     * Each matching host gets its own token bucket: at most {@code burst} downloads may start at once,
+     * then downloads start at given rate. Downloads of rate-limited host wait without occupying downloaders.
+     * Pattern is a host name, where {@code *} matches any sequence of characters, e.g. {@code *.example.com}.
+     * If several patterns match host, the first set is used, setting pattern again replaces its limit
+     *
+     * @param hostPattern pattern of host names
+     * @param requestsPerSecond positive rate of downloads
+     * @param burst positive number of downloads that may start at once
+     */
+    public void setRateLimit(final String hostPattern, final double requestsPerSecond, final int burst) {
+        if (!(requestsPerSecond > 0) || Double.isInfinite(requestsPerSecond)) {
+            throw new IllegalArgumentException("Expected positive rate, found " + requestsPerSecond);
+        }
+        if (burst <= 0) {
+            throw new IllegalArgumentException("Expected positive burst, found " + burst);
+        }
+        final StringBuilder regex = new StringBuilder();
+        for (final String part : hostPattern.split("\\*", -1)) {
+            if (!regex.isEmpty()) {
+                regex.append(".*");
+            }
+            regex.append(Pattern.quote(part));
+        }
+        synchronized (rateLimits) {
+            if (scheduler == null) {
+                scheduler = Executors.newSingleThreadScheduledExecutor();
+            }
+            rateLimits.put(hostPattern, new RateLimit(
+                    Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE), requestsPerSecond, burst));
+            hostControllers.forEach((host, controller) -> controller.setRateLimit(newBucket(host)));
+        }
+    }
+
+    private TokenBucket newBucket(final String host) {
+        synchronized (rateLimits) {
+            for (final RateLimit limit : rateLimits.values()) {
+                if (limit.hosts().matcher(host).matches()) {
+                    return new TokenBucket(limit.requestsPerSecond(), limit.burst());
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Return download statistics of hosts accessed by this web-crawler
+     *
+     * @return statistics by host
+     */
+    public Map<String, HostStatistics> getHostStatistics() {
+        final boolean adaptive = adaptivePerHost;
+        final Map<String, HostStatistics> statistics = new TreeMap<>();
+        hostControllers.forEach((host, controller) -> statistics.put(host, controller.statistics(adaptive)));
+        return statistics;
+    }
+
+    /**
+     * Use Bloom filter instead of exact set of visited pages in subsequent crawls.
+     * <p>
+     * Memory of the filter is fixed, about {@code 1.44 * log2(1 / falsePositiveProbability)} bits per page,
+     * but new page is skipped as visited with given probability once crawl reaches expected number of pages
+     *
+     * @param expectedPages expected number of pages of crawl
+     * @param falsePositiveProbability probability of skipping new page
+     */
+    public void setBloomFilter(final long expectedPages, final double falsePositiveProbability) {
+        if (expectedPages <= 0) {
+            throw new IllegalArgumentException("Expected positive number of pages, found " + expectedPages);
+        }
+        if (!(falsePositiveProbability > 0 && falsePositiveProbability < 1)) {
+            throw new IllegalArgumentException("Expected probability in (0, 1), found " + falsePositiveProbability);
+        }
+        visitedSets = () -> new BloomFilter(expectedPages, falsePositiveProbability);
+    }
+
+    /**
+     * Set order of downloads of subsequent crawls.
+     * <p>
+     * Each host keeps its queued pages in order of the policy. In {@link DownloaderThreads#PLATFORM} mode
+     * downloads of all hosts wait for downloader in that order too. All pages of each depth of
+     * {@link Mode#LEVEL_BY_LEVEL} crawl are queued before the first of them is submitted.
+     * Default policy is {@link FrontierPolicy#FIFO}
+     *
+     * @param policy order of downloads
+     */
+    public void setFrontierPolicy(final FrontierPolicy policy) {
+        this.frontierPolicy = Objects.requireNonNull(policy);
+    }
+
+    /**
+     * Limit number of pages downloaded by each subsequent crawl.
+     * <p>
+     * Budget is spent when download starts, so failed downloads count too, pages left when it is exhausted
+     * are skipped. Together with {@link #setFrontierPolicy} the budget goes to the most valuable pages.
+     * Budget does not apply to resumable crawls, as their frontier is kept on disk in order of discovery
+     *
+     * @param pages positive number of pages, {@link Long#MAX_VALUE} for no limit
+     */
+    public void setPageBudget(final long pages) {
+        if (pages <= 0) {
+            throw new IllegalArgumentException("Expected positive page budget, found " + pages);
+        }
+        this.pageBudget = pages;
     }
 
     /**
@@ -59,33 +391,217 @@ public class WebCrawler implements AdvancedCrawler {
         return download(url, depth, hosts, true);
     }
 
+    /**
+     * Downloads website up to specified depth, keeping crawl state in given directory.
+     * <p>
+     * Frontier, visited pages and results are stored on disk, memory used by crawl does not depend
+     * on number of pages except for the set of visited pages and the returned result.
+     * If directory contains state of interrupted crawl of the same page and depth, crawl is resumed
+     * from its last checkpoint. If calling thread is interrupted, pages in flight are finished,
+     * checkpoint is written and pages downloaded so far are returned
+     *
+     * @param url      start <a href="http://tools.ietf.org/html/rfc3986">URL</a>.
+     * @param depth    download depth.
+     * @param hosts    domains to follow, pages on another domains should be ignored.
+     * @param stateDir directory of crawl state
+     * @return download result.
+     * @throws UncheckedIOException  if crawl state could not be read or written
+     * @throws IllegalStateException if directory contains state of another crawl
+     */
+    public Result download(final String url, final int depth, final List<String> hosts, final Path stateDir) {
+        return downloadResumable(url, depth, hosts, true, stateDir);
+    }
+
+    /**
+     * Downloads website up to specified depth, keeping crawl state in given directory.
+     *
+     * @param url      start <a href="http://tools.ietf.org/html/rfc3986">URL</a>.
+     * @param depth    download depth.
+     * @param stateDir directory of crawl state
+     * @return download result.
+     * @throws UncheckedIOException  if crawl state could not be read or written
+     * @throws IllegalStateException if directory contains state of another crawl
+     * @see #download(String, int, List, Path)
+     */
+    public Result download(final String url, final int depth, final Path stateDir) {
+        return downloadResumable(url, depth, List.of(), false, stateDir);
+    }
+
+    private Result downloadResumable(final String url,
+                                     final int depth,
+                                     final List<String> permittedHosts,
+                                     final boolean onlyPermitted,
+                                     final Path stateDir) {
+        try (final CrawlStore store = CrawlStore.open(stateDir, url, depth, visitedSets.get())) {
+            return new ResumableCrawl(store, depth, permittedHosts, onlyPermitted).run();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
+    /**
+     * Downloads from single host of single crawl, at most {@link HostController#limit} in parallel,
+     * in order of {@link FrontierPolicy}. When rate limit of the host is exhausted, queue is parked until the next token
+     */
     private class HostTask {
-        private final Queue<Runnable> tasks;
-        private final Semaphore semaphore;
+        private final String host;
+        private final FrontierPolicy policy;
+        private final Queue<PrioritizedTask> tasks;
+        private final HostController controller;
+        /**
+         * Number of tasks ever queued, guarded by this
+         */
+        private int queuedPages;
+        /**
+         * Number of submitted and not finished tasks, guarded by this
+         */
+        private int running;
+        /**
+         * Whether wake up is scheduled, guarded by this
+         */
+        private boolean parked;
+
+        public HostTask(final String host, final FrontierPolicy policy) {
+            this.host = host;
+            this.policy = policy;
+            this.tasks = new PriorityQueue<>();
+            synchronized (rateLimits) {
+                this.controller = hostControllers.computeIfAbsent(host, h -> {
+                    final HostController hostController = new HostController(perHost);
+                    hostController.setRateLimit(newBucket(h));
+                    return hostController;
+                });
+            }
+        }
+
+        private synchronized void submitReady() {
+            while (!parked && !tasks.isEmpty() && running < controller.limit(adaptivePerHost)) {
+                final long delay = controller.tryAcquirePermit();
+                if (delay > 0) {
+                    parked = true;
+                    scheduler.schedule(this::unpark, delay, TimeUnit.NANOSECONDS);
+                    return;
+                }
+                running++;
+                final PrioritizedTask task = tasks.poll();
+                controller.dequeued();
+                downloaderService.execute(new PrioritizedTask(task.priority(), task.sequence(), () -> {
+                    try {
+                        task.run();
+                    } finally {
+                        finished();
+                    }
+                }));
+            }
+        }
+
+        private synchronized void finished() {
+            running--;
+            submitReady();
+        }
+
+        private synchronized void unpark() {
+            parked = false;
+            submitReady();
+        }
+
+        private synchronized void addTask(final String url, final int depth, final Runnable task) {
+            enqueue(url, depth, task);
+            submitReady();
+        }
 
-        public HostTask() {
-            this.tasks = new ArrayDeque<>();
-            this.semaphore = new Semaphore(perHost);
+        /**
+         * Queue download of page without submitting it, see {@link #submitReady}
+         *
+         * @param url page
+         * @param depth depth page was reached at
+         * @param task download
+         */
+        private synchronized void enqueue(final String url, final int depth, final Runnable task) {
+            tasks.add(new PrioritizedTask(policy.priority(url, depth, queuedPages++), sequence.getAndIncrement(), task));
+            controller.enqueued();
         }
 
-        private synchronized void releaseOrSubmit() {
-            if (tasks.isEmpty()) {
-                semaphore.release();
-            } else {
-                downloaderService.submit(tasks.poll());
+        /**
+         * Download page, reporting its latency and outcome to controller of the host.
+         * In {@link DownloaderThreads#VIRTUAL} mode waits for one of {@code downloaders} permits first
+         *
+         * @param url page
+         * @return downloaded document
+         * @throws IOException if an error occurred
+         */
+        private Document download(final String url) throws IOException {
+            if (downloadPermits != null) {
+                try {
+                    downloadPermits.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for downloader");
+                }
+            }
+            try {
+                return measuredDownload(url);
+            } finally {
+                if (downloadPermits != null) {
+                    downloadPermits.release();
+                }
             }
         }
 
-        private synchronized void addTask(final Runnable task) {
-            final Runnable runnable = () -> {
-                task.run();
-                releaseOrSubmit();
-            };
-            if (semaphore.tryAcquire()) {
-                downloaderService.submit(runnable);
-            } else {
-                tasks.add(runnable);
+        private Document measuredDownload(final String url) throws IOException {
+            final CrawlerEvents.Download event = new CrawlerEvents.Download();
+            event.begin();
+            final long token = controller.started();
+            final long start = System.nanoTime();
+            Document document = null;
+            Exception exception = null;
+            try {
+                document = downloader.download(url);
+                return document;
+            } catch (IOException | RuntimeException e) {
+                exception = e;
+                throw e;
+            } finally {
+                final long latency = System.nanoTime() - start;
+                controller.finished(token, latency, document == null);
+                final long size = document instanceof SizedDocument sized ? sized.size() : -1;
+                metrics.downloaded(latency, size, exception);
+                if (event.shouldCommit()) {
+                    event.url = url;
+                    event.host = host;
+                    event.size = size;
+                    event.error = exception == null ? null : exception.getClass().getName();
+                    event.commit();
+                }
+            }
+        }
+    }
+
+    /**
+     * Extract links of downloaded page, reporting latency and error to metrics and JFR
+     *
+     * @param url page
+     * @param document downloaded document
+     * @return links of the page
+     * @throws IOException if an error occurred
+     */
+    private List<String> extractLinks(final String url, final Document document) throws IOException {
+        final CrawlerEvents.Extract event = new CrawlerEvents.Extract();
+        event.begin();
+        final long start = metrics.now();
+        try {
+            final List<String> links = document.extractLinks();
+            event.links = links.size();
+            return links;
+        } catch (IOException | RuntimeException e) {
+            metrics.failed(e);
+            event.error = e.getClass().getName();
+            throw e;
+        } finally {
+            metrics.extracted(start);
+            if (event.shouldCommit()) {
+                event.url = url;
+                event.commit();
             }
         }
     }
@@ -94,17 +610,28 @@ public class WebCrawler implements AdvancedCrawler {
                             final int depth,
                             final List<String> permittedHosts,
                             final boolean onlyPermitted) {
+        if (mode == Mode.PIPELINED) {
+            if (depth < 1) {
+                // nothing is downloaded, as in level-by-level mode
+                return new Result(new ArrayList<>(), new HashMap<>());
+            }
+            return new PipelinedCrawl(depth, permittedHosts, onlyPermitted).run(url);
+        }
         final Map<String, IOException> exceptions = new ConcurrentHashMap<>();
-        final Set<String> downloaded = ConcurrentHashMap.newKeySet();
-        Set<String> prevURLs = ConcurrentHashMap.newKeySet();
-        hostTasks = new ConcurrentHashMap<>();
+        final Queue<String> downloaded = new ConcurrentLinkedQueue<>();
+        final VisitedSet visited = visitedSets.get();
+        final FrontierPolicy policy = frontierPolicy;
+        final AtomicLong budget = new AtomicLong(pageBudget);
+        Queue<String> prevURLs = new ConcurrentLinkedQueue<>();
+        final Map<String, HostTask> hostTasks = new ConcurrentHashMap<>();
+        visited.add(VisitedSet.fingerprint(url));
         prevURLs.add(url);
         final Phaser phaser = new Phaser(1);
         while (phaser.getPhase() < depth) {
-            Set<String> nextURLs = ConcurrentHashMap.newKeySet();
-            Set<String> finalPrevURLs = prevURLs;
+            Queue<String> nextURLs = new ConcurrentLinkedQueue<>();
             prevURLs.forEach(u -> downloadURL(u, depth, permittedHosts, onlyPermitted,
-                    phaser, exceptions, finalPrevURLs, nextURLs, downloaded));
+                    phaser, exceptions, visited, nextURLs, downloaded, hostTasks, policy, budget));
+            hostTasks.values().forEach(HostTask::submitReady);
             phaser.arriveAndAwaitAdvance();
             prevURLs = nextURLs;
         }
@@ -117,30 +644,36 @@ public class WebCrawler implements AdvancedCrawler {
                              final boolean onlyPermitted,
                              final Phaser phaser,
                              final Map<String, IOException> exceptions,
-                             final Set<String> prevURLs,
-                             final Set<String> nextURLs,
-                             final Set<String> downloaded) {
+                             final VisitedSet visited,
+                             final Queue<String> nextURLs,
+                             final Queue<String> downloaded,
+                             final Map<String, HostTask> hostTasks,
+                             final FrontierPolicy policy,
+                             final AtomicLong budget) {
+        if (budget.get() <= 0) {
+            return;
+        }
         try {
             final String host = URLUtils.getHost(url);
             if (onlyPermitted && !permittedHosts.contains(host)) {
                 return;
             }
-            hostTasks.putIfAbsent(host, new HostTask());
-            final HostTask hostTask = hostTasks.get(host);
+            final HostTask hostTask = hostTasks.computeIfAbsent(host, h -> new HostTask(h, policy));
             phaser.register();
-            hostTask.addTask(() -> {
+            hostTask.enqueue(url, phaser.getPhase() + 1, () -> {
                 try {
-                    final Document document = downloader.download(url);
+                    if (budget.decrementAndGet() < 0) {
+                        return;
+                    }
+                    final Document document = hostTask.download(url);
                     downloaded.add(url);
                     if (phaser.getPhase() + 1 < depth) {
                         phaser.register();
                         final Runnable extractLinks = () -> {
                             try {
-                                document.extractLinks()
+                                extractLinks(url, document)
                                         .stream()
-                                        .filter(link -> !downloaded.contains(link)
-                                                && !exceptions.containsKey(link)
-                                                && !prevURLs.contains(link))
+                                        .filter(link -> visited.add(VisitedSet.fingerprint(link)))
                                         .forEach(nextURLs::add);
                             } catch (IOException ignored) {
 
@@ -157,17 +690,536 @@ public class WebCrawler implements AdvancedCrawler {
                 }
             });
         } catch (MalformedURLException e) {
+            metrics.failed(e);
             exceptions.put(url, e);
         }
     }
 
+    /**
+     * State of page of pipelined crawl, guarded by itself
+     */
+    private static class Page {
+        /**
+         * The shortest depth page was reached by
+         */
+        private int depth = Integer.MAX_VALUE;
+        /**
+         * Whether download was scheduled
+         */
+        private boolean started;
+        /**
+         * Downloaded document, kept until its links are extracted or page can not be reached by shorter path
+         */
+        private Document document;
+        /**
+         * Whether links extraction was scheduled
+         */
+        private boolean extracting;
+        /**
+         * Extracted links or {@code null}, kept until page can not be reached by shorter path
+         */
+        private List<String> links;
+        /**
+         * Whether download or extraction of page is scheduled and not finished
+         */
+        private boolean active;
+    }
+
+    /**
+     * Single {@link #download} call in {@link Mode#PIPELINED} mode
+     * <p>
+     * Page is downloaded if it is reachable from start page by at most {@code depth - 1} links,
+     * its links are extracted if it is reachable by less than {@code depth - 1} links.
+     * When page is reached by shorter path later, its links are propagated again with smaller depth.
+     * <p>
+     * Only active pages, whose download or extraction is not finished, discover new pages, and page of depth
+     * {@code d} discovers pages of depth {@code d + 1}. So page can not be reached by shorter path once its
+     * depth is at most the minimal depth of active pages plus one, then its document and links are released
+     */
+    private class PipelinedCrawl {
+        private final int depth;
+        private final List<String> permittedHosts;
+        private final boolean onlyPermitted;
+        /**
+         * Pages by fingerprint
+         */
+        private final Map<Long, Page> pages = new ConcurrentHashMap<>();
+        private final Set<String> downloaded = ConcurrentHashMap.newKeySet();
+        private final Map<String, IOException> exceptions = new ConcurrentHashMap<>();
+        private final Map<String, HostTask> hosts = new ConcurrentHashMap<>();
+        private final FrontierPolicy policy = frontierPolicy;
+        /**
+         * Number of downloads left to start
+         */
+        private final AtomicLong budget = new AtomicLong(pageBudget);
+        /**
+         * Number of scheduled and not finished downloads and extractions, guarded by this
+         */
+        private int inFlight;
+        /**
+         * Number of active pages by depth, guarded by this
+         */
+        private final int[] activePages;
+        /**
+         * Inactive pages keeping document or links by depth they were left at, guarded by this
+         */
+        private final List<List<Page>> retained = new ArrayList<>();
+        /**
+         * Whether waiting caller was interrupted, so scheduled tasks are skipped
+         */
+        private volatile boolean cancelled;
+
+        private PipelinedCrawl(final int depth, final List<String> permittedHosts, final boolean onlyPermitted) {
+            this.depth = depth;
+            this.permittedHosts = permittedHosts;
+            this.onlyPermitted = onlyPermitted;
+            this.activePages = new int[depth + 1];
+            for (int i = 0; i <= depth; ++i) {
+                retained.add(new ArrayList<>());
+            }
+        }
+
+        /**
+         * Crawl from given page and wait until there are no tasks in flight.
+         * If waiting thread is interrupted, scheduled tasks are skipped and pages downloaded so far
+         * are returned once running tasks finish, so result is not changed after return
+         *
+         * @param url start page
+         * @return download result
+         */
+        private Result run(final String url) {
+            discover(url, 1);
+            boolean interrupted = false;
+            synchronized (this) {
+                while (inFlight > 0) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                        cancelled = true;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return new Result(new ArrayList<>(downloaded), new HashMap<>(exceptions));
+        }
+
+        private synchronized void started() {
+            inFlight++;
+        }
+
+        private synchronized void finished() {
+            if (--inFlight == 0) {
+                notifyAll();
+            }
+        }
+
+        /**
+         * Mark page active. Lock of the page should be held
+         *
+         * @param page page
+         */
+        private void activate(final Page page) {
+            page.active = true;
+            synchronized (this) {
+                activePages[page.depth]++;
+            }
+        }
+
+        /**
+         * Mark page inactive and release documents and links of pages that can not be reached by shorter path
+         *
+         * @param page page
+         */
+        private void deactivate(final Page page) {
+            final List<Page> released = new ArrayList<>();
+            synchronized (page) {
+                page.active = false;
+                synchronized (this) {
+                    activePages[page.depth]--;
+                    if (page.document != null || page.links != null) {
+                        retained.get(page.depth).add(page);
+                    }
+                    int minDepth = 1;
+                    while (minDepth <= depth && activePages[minDepth] == 0) {
+                        minDepth++;
+                    }
+                    for (int i = 1; i <= Math.min(minDepth + 1, depth); ++i) {
+                        released.addAll(retained.get(i));
+                        retained.get(i).clear();
+                    }
+                }
+            }
+            for (final Page releasedPage : released) {
+                synchronized (releasedPage) {
+                    // page could be activated by shorter path found before it was released
+                    if (!releasedPage.active) {
+                        releasedPage.document = null;
+                        releasedPage.links = null;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Process page reached at given depth
+         *
+         * @param url page
+         * @param pageDepth depth page was reached at
+         */
+        private void discover(final String url, final int pageDepth) {
+            if (pageDepth > depth || cancelled) {
+                return;
+            }
+            final Page page = pages.computeIfAbsent(VisitedSet.fingerprint(url), u -> new Page());
+            boolean download = false;
+            boolean extract = false;
+            List<String> links = null;
+            synchronized (page) {
+                if (pageDepth >= page.depth) {
+                    return;
+                }
+                if (page.active) {
+                    synchronized (this) {
+                        activePages[page.depth]--;
+                        activePages[pageDepth]++;
+                    }
+                }
+                page.depth = pageDepth;
+                if (!page.started) {
+                    page.started = true;
+                    download = true;
+                } else if (pageDepth < depth) {
+                    if (page.links != null) {
+                        links = page.links;
+                    } else if (page.document != null && !page.extracting) {
+                        page.extracting = true;
+                        activate(page);
+                        extract = true;
+                    }
+                }
+            }
+            if (download) {
+                download(url, pageDepth, page);
+            } else if (extract) {
+                extract(url, page);
+            } else if (links != null) {
+                links.forEach(link -> discover(link, pageDepth + 1));
+            }
+        }
+
+        private void download(final String url, final int pageDepth, final Page page) {
+            if (budget.get() <= 0) {
+                return;
+            }
+            final HostTask hostTask;
+            try {
+                final String host = URLUtils.getHost(url);
+                if (onlyPermitted && !permittedHosts.contains(host)) {
+                    return;
+                }
+                hostTask = hosts.computeIfAbsent(host, h -> new HostTask(h, policy));
+            } catch (MalformedURLException e) {
+                metrics.failed(e);
+                exceptions.put(url, e);
+                return;
+            }
+            synchronized (page) {
+                activate(page);
+            }
+            started();
+            hostTask.addTask(url, pageDepth, () -> {
+                boolean extract = false;
+                try {
+                    if (cancelled || budget.decrementAndGet() < 0) {
+                        return;
+                    }
+                    final Document document = hostTask.download(url);
+                    downloaded.add(url);
+                    synchronized (page) {
+                        page.document = document;
+                        extract = page.depth < depth;
+                        page.extracting = extract;
+                    }
+                    if (extract) {
+                        extract(url, page);
+                    }
+                } catch (IOException e) {
+                    exceptions.put(url, e);
+                } finally {
+                    if (!extract) {
+                        deactivate(page);
+                    }
+                    finished();
+                }
+            });
+        }
+
+        private void extract(final String url, final Page page) {
+            started();
+            extractorService.submit(() -> {
+                try {
+                    if (cancelled) {
+                        return;
+                    }
+                    final Document document;
+                    synchronized (page) {
+                        document = page.document;
+                    }
+                    List<String> links;
+                    try {
+                        links = extractLinks(url, document);
+                    } catch (IOException e) {
+                        links = List.of();
+                    }
+                    final int pageDepth;
+                    synchronized (page) {
+                        page.links = links;
+                        page.document = null;
+                        pageDepth = page.depth;
+                    }
+                    links.forEach(link -> discover(link, pageDepth + 1));
+                } finally {
+                    deactivate(page);
+                    finished();
+                }
+            });
+        }
+    }
+
+    /**
+     * Single resumable {@link #download} call
+     * <p>
+     * Frontier of each depth is read from {@link CrawlStore} lazily: entry is scheduled only when it is less
+     * than {@link #RESUMABLE_WINDOW} entries ahead of the first not processed one. Entry is processed when
+     * page is downloaded and its links are added to the next frontier. Number of entries processed without
+     * gaps is checkpointed periodically
+     */
+    private class ResumableCrawl {
+        private final CrawlStore store;
+        private final int depth;
+        private final List<String> permittedHosts;
+        private final boolean onlyPermitted;
+        private final Map<String, HostTask> hosts = new ConcurrentHashMap<>();
+        private final Map<String, IOException> exceptions = new ConcurrentHashMap<>();
+        private final FrontierPolicy policy = frontierPolicy;
+        /**
+         * Processed entries of the window by index modulo window size, guarded by this
+         */
+        private final boolean[] processed = new boolean[RESUMABLE_WINDOW];
+        private long next;
+        private long watermark;
+        private long checkpointed;
+        private long checkpointNanos;
+        private IOException storeFailure;
+
+        private ResumableCrawl(final CrawlStore store,
+                               final int depth,
+                               final List<String> permittedHosts,
+                               final boolean onlyPermitted) {
+            this.store = store;
+            this.depth = depth;
+            this.permittedHosts = permittedHosts;
+            this.onlyPermitted = onlyPermitted;
+        }
+
+        private Result run() throws IOException {
+            boolean interrupted = false;
+            while (!store.isDone()) {
+                if (!runLevel(store.level())) {
+                    interrupted = true;
+                    break;
+                }
+                store.advance();
+            }
+            final Result result = store.result(exceptions);
+            if (interrupted) {
+                // restored after result is read, as interrupt closes file channels
+                Thread.currentThread().interrupt();
+            }
+            return result;
+        }
+
+        /**
+         * Process frontier of given depth from the last checkpoint
+         *
+         * @param level depth
+         * @return {@code false} if thread was interrupted
+         * @throws IOException if crawl state could not be read or written
+         */
+        private boolean runLevel(final int level) throws IOException {
+            synchronized (this) {
+                next = watermark = checkpointed = store.position();
+                checkpointNanos = System.nanoTime();
+                Arrays.fill(processed, false);
+            }
+            boolean interrupted = false;
+            IOException readFailure = null;
+            try (final SegmentLog.LineReader frontier = store.frontier()) {
+                while (frontier.hasNext()) {
+                    final String url = frontier.next();
+                    final long index;
+                    synchronized (this) {
+                        while (next - watermark >= RESUMABLE_WINDOW) {
+                            wait();
+                        }
+                        index = next++;
+                    }
+                    process(url, level, index);
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            } catch (UncheckedIOException e) {
+                // scheduled entries still use the store, so failure is thrown after they are processed
+                readFailure = e.getCause();
+            }
+            synchronized (this) {
+                while (watermark < next) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (readFailure != null) {
+                    if (storeFailure != null) {
+                        readFailure.addSuppressed(storeFailure);
+                    }
+                    throw readFailure;
+                }
+                if (storeFailure != null) {
+                    throw storeFailure;
+                }
+                store.checkpoint(watermark);
+            }
+            return !interrupted;
+        }
+
+        private void process(final String url, final int level, final long index) {
+            final HostTask hostTask;
+            try {
+                final String host = URLUtils.getHost(url);
+                if (onlyPermitted && !permittedHosts.contains(host)) {
+                    processed(index);
+                    return;
+                }
+                hostTask = hosts.computeIfAbsent(host, h -> new HostTask(h, policy));
+            } catch (MalformedURLException e) {
+                metrics.failed(e);
+                failed(url, e);
+                processed(index);
+                return;
+            }
+            hostTask.addTask(url, level, () -> {
+                boolean extracting = false;
+                try {
+                    final Document document;
+                    try {
+                        document = hostTask.download(url);
+                    } catch (IOException e) {
+                        failed(url, e);
+                        return;
+                    }
+                    store.downloaded(url);
+                    if (level < depth) {
+                        extractorService.submit(() -> {
+                            try {
+                                addLinks(url, document);
+                            } finally {
+                                processed(index);
+                            }
+                        });
+                        // set after submit, as rejected extraction is not going to mark entry processed
+                        extracting = true;
+                    }
+                } catch (IOException e) {
+                    storeFailed(e);
+                } finally {
+                    if (!extracting) {
+                        processed(index);
+                    }
+                }
+            });
+        }
+
+        /**
+         * Add links of downloaded page to the next frontier.
+         * Page whose links could not be extracted is skipped, as in other modes
+         *
+         * @param url page
+         * @param document downloaded document
+         */
+        private void addLinks(final String url, final Document document) {
+            final List<String> links;
+            try {
+                links = extractLinks(url, document);
+            } catch (IOException e) {
+                return;
+            }
+            try {
+                for (final String link : links) {
+                    store.discover(link);
+                }
+            } catch (IOException e) {
+                storeFailed(e);
+            }
+        }
+
+        private void failed(final String url, final IOException exception) {
+            exceptions.put(url, exception);
+            try {
+                store.failed(url, exception);
+            } catch (IOException e) {
+                storeFailed(e);
+            }
+        }
+
+        private synchronized void storeFailed(final IOException exception) {
+            if (storeFailure == null) {
+                storeFailure = exception;
+            }
+        }
+
+        /**
+         * Mark entry as processed, advance watermark and write checkpoint if it is due
+         *
+         * @param index index of entry in frontier
+         */
+        private synchronized void processed(final long index) {
+            processed[(int) (index % RESUMABLE_WINDOW)] = true;
+            while (watermark < next && processed[(int) (watermark % RESUMABLE_WINDOW)]) {
+                processed[(int) (watermark % RESUMABLE_WINDOW)] = false;
+                watermark++;
+            }
+            if (storeFailure == null && (watermark - checkpointed >= CHECKPOINT_ENTRIES
+                    || System.nanoTime() - checkpointNanos >= CHECKPOINT_NANOS)) {
+                try {
+                    store.checkpoint(watermark);
+                    checkpointed = watermark;
+                    checkpointNanos = System.nanoTime();
+                } catch (IOException e) {
+                    storeFailure = e;
+                }
+            }
+            notifyAll();
+        }
+    }
+
     /**
      * Closes this web-crawler, relinquishing any allocated resources.
      */
     @Override
     public void close() {
+        FlightRecorder.removePeriodicEvent(queuesHook);
+        FlightRecorder.removePeriodicEvent(hostQueuesHook);
         shutdownAndAwaitTermination(downloaderService);
         shutdownAndAwaitTermination(extractorService);
+        final ScheduledExecutorService rateScheduler = scheduler;
+        if (rateScheduler != null) {
+            shutdownAndAwaitTermination(rateScheduler);
+        }
     }
 
     void shutdownAndAwaitTermination(ExecutorService pool) {
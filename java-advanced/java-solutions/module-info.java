@@ -1,10 +1,15 @@
+@SuppressWarnings("requires-automatic")
 open module info.kgeorgiy.ja.osipov.implementor {
     requires java.compiler;
+    requires java.management;
+    requires jdk.management;
+    requires jdk.jfr;
     requires info.kgeorgiy.java.advanced.implementor;
     requires info.kgeorgiy.java.advanced.student;
     requires info.kgeorgiy.java.advanced.concurrent;
     requires info.kgeorgiy.java.advanced.mapper;
     requires info.kgeorgiy.java.advanced.crawler;
+    requires jsoup;
     requires info.kgeorgiy.java.advanced.hello;
     exports info.kgeorgiy.ja.osipov.implementor;
 }
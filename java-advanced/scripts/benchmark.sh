@@ -0,0 +1,17 @@
+#!/bin/bash
+
+MODULE=info.kgeorgiy.ja.osipov.implementor
+CLASS=info.kgeorgiy.ja.osipov.concurrent.ParallelismBenchmark
+OUTPUT=${1:-benchmark.csv}
+
+javac \
+	-d ./javac_files \
+	-p ../../java-advanced-2023/artifacts/:../../java-advanced-2023/lib \
+	--module-source-path ${MODULE}=../java-solutions \
+	--module ${MODULE}
+
+java \
+	-p ./javac_files:../../java-advanced-2023/artifacts/:../../java-advanced-2023/lib \
+	-m ${MODULE}/${CLASS} "$OUTPUT" "${@:2}"
+
+rm -rf javac_files